@@ -0,0 +1,208 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Sorts words by an alphabet permutation with a most-significant-digit
+ * radix sort on alphabet ranks, instead of building a Trie and draining it
+ * through a priority queue. Each pass distributes a range of words into one
+ * bucket per letter by the letter at the current depth, with words that
+ * end there first, then sorts every bucket one letter deeper. Buckets of
+ * fewer than CUTOFF words are insertion sorted, and buckets of at least
+ * PARALLEL_CUTOFF words are sorted as separate tasks on the common
+ * fork-join pool.
+ *
+ * The order is the one AlphabetSort prints: letter by letter by alphabet
+ * position, a word before its extensions.
+ *
+ * @author
+ */
+public class AlphabetRadixSort {
+    /** Buckets smaller than this are insertion sorted */
+    static final int CUTOFF = 16;
+    /** Buckets at least this large are sorted as tasks of their own */
+    static final int PARALLEL_CUTOFF = 1 << 13;
+
+    private final int[] digit = new int[Character.MAX_VALUE + 1];    // rank + 1, 0 if not a letter
+    private final int radix;                                         // letters + 1 for word end
+
+    /**
+     * @param alphabet - every char allowed in a word, in sort order
+     */
+    public AlphabetRadixSort(String alphabet) {
+        if (alphabet == null) {
+            throw new NullPointerException("alphabet is null");
+        }
+        for (int i = 0; i < alphabet.length(); i++) {
+            char c = alphabet.charAt(i);
+            if (digit[c] != 0) {
+                throw new IllegalArgumentException("letter appears multiple times");
+            }
+            digit[c] = i + 1;
+        }
+        radix = alphabet.length() + 1;
+    }
+
+    /** True if every char of word is in the alphabet */
+    public boolean inAlphabet(String word) {
+        for (int i = 0; i < word.length(); i++) {
+            if (digit[word.charAt(i)] == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Sorts words in alphabet order. Every word must be in the alphabet.
+     *
+     * Runtime: O(L + N R / CUTOFF) - L = total length of the distinguishing
+     *                                    prefixes of the words
+     *                                N = number of words
+     *                                R = alphabet size
+     * @param words - words to sort in place
+     */
+    public void sort(String[] words) {
+        String[] aux = new String[words.length];
+        if (words.length < PARALLEL_CUTOFF || ForkJoinPool.getCommonPoolParallelism() < 2) {
+            sort(words, aux, 0, words.length, 0, null);
+        } else {
+            ForkJoinPool.commonPool().invoke(new Bucket(words, aux, 0, words.length, 0));
+        }
+    }
+
+    /**
+     * Sorts words in alphabet order and returns each distinct one once.
+     *
+     * @param words - words in the alphabet, in any order
+     */
+    public List<String> sortDistinct(List<String> words) {
+        String[] a = words.toArray(new String[0]);
+        sort(a);
+        List<String> retVal = new ArrayList<>();
+        for (int i = 0; i < a.length; i++) {
+            if (i == 0 || !a[i].equals(a[i - 1])) {
+                retVal.add(a[i]);
+            }
+        }
+        return retVal;
+    }
+
+    // Digit of word at depth d: 0 past the end, else rank + 1
+    private int digitAt(String word, int d) {
+        return d < word.length() ? digit[word.charAt(d)] : 0;
+    }
+
+    // Sorts a[lo, hi), whose words agree on their first d chars. Buckets of
+    // PARALLEL_CUTOFF words or more are added to tasks when it is not null.
+    // Ranges left to sort are kept on an explicit stack of (lo, hi, d)
+    // triples rather than recursed into, so nested words like "a", "aa",
+    // "aaa", ... cost no call depth however long they get.
+    private void sort(String[] a, String[] aux, int lo, int hi, int d, List<Bucket> tasks) {
+        int[] stack = {lo, hi, d};
+        int top = 3;
+        while (top > 0) {
+            top -= 3;
+            lo = stack[top];
+            hi = stack[top + 1];
+            d = stack[top + 2];
+            int n = hi - lo;
+            if (n < CUTOFF) {
+                insertionSort(a, lo, hi, d);
+                continue;
+            }
+            if (n < radix / 4) {
+                // clearing a count per letter would cost more than comparing
+                int depth = d;
+                Arrays.sort(a, lo, hi, (x, y) -> compare(x, y, depth));
+                continue;
+            }
+
+            int[] count = new int[radix + 1];
+            for (int i = lo; i < hi; i++) {
+                count[digitAt(a[i], d) + 1]++;
+            }
+            if (count[digitAt(a[lo], d) + 1] == n && digitAt(a[lo], d) != 0) {
+                // one letter continues every word: look one char deeper
+                stack[top + 2] = d + 1;
+                top += 3;
+                continue;
+            }
+            for (int r = 0; r < radix; r++) {
+                count[r + 1] += count[r];
+            }
+            for (int i = lo; i < hi; i++) {
+                aux[lo + count[digitAt(a[i], d)]++] = a[i];
+            }
+            System.arraycopy(aux, lo, a, lo, n);
+
+            // count[r] now ends bucket r; bucket 0 holds equal words ending here
+            for (int r = 1; r < radix; r++) {
+                int from = lo + count[r - 1];
+                int to = lo + count[r];
+                if (to - from >= PARALLEL_CUTOFF && tasks != null) {
+                    tasks.add(new Bucket(a, aux, from, to, d + 1));
+                } else if (to - from > 1) {
+                    if (top + 3 > stack.length) {
+                        stack = Arrays.copyOf(stack, 2 * stack.length);
+                    }
+                    stack[top] = from;
+                    stack[top + 1] = to;
+                    stack[top + 2] = d + 1;
+                    top += 3;
+                }
+            }
+        }
+    }
+
+    private void insertionSort(String[] a, int lo, int hi, int d) {
+        for (int i = lo + 1; i < hi; i++) {
+            String word = a[i];
+            int j = i - 1;
+            while (j >= lo && compare(a[j], word, d) > 0) {
+                a[j + 1] = a[j];
+                j--;
+            }
+            a[j + 1] = word;
+        }
+    }
+
+    // Compares from depth d on, a word before its extensions
+    private int compare(String x, String y, int d) {
+        int len = Math.min(x.length(), y.length());
+        for (int i = d; i < len; i++) {
+            int diff = digit[x.charAt(i)] - digit[y.charAt(i)];
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return x.length() - y.length();
+    }
+
+    /** A bucket sorted as a fork-join task, forking its own large buckets */
+    @SuppressWarnings("serial")
+    private final class Bucket extends RecursiveAction {
+        private final String[] a;
+        private final String[] aux;
+        private final int lo;
+        private final int hi;
+        private final int d;
+
+        Bucket(String[] a, String[] aux, int lo, int hi, int d) {
+            this.a = a;
+            this.aux = aux;
+            this.lo = lo;
+            this.hi = hi;
+            this.d = d;
+        }
+
+        @Override
+        protected void compute() {
+            List<Bucket> tasks = new ArrayList<>();
+            sort(a, aux, lo, hi, d, tasks);
+            invokeAll(tasks);
+        }
+    }
+}
@@ -1,15 +1,33 @@
-import java.io.FileNotFoundException;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Hashtable;
-import java.util.PriorityQueue;
-import java.util.Scanner;
+import java.util.List;
 
 /**
- * AlphabetSort takes input from stdin and prints to stdout.
+ * AlphabetSort takes input from stdin, or from the file named by its first
+ * argument, and prints to stdout.
  * The first line of input is the alphabet permutation.
  * The the remaining lines are the words to be sorted.
  *
  * The output should be the sorted words, each on its own line,
  * printed to std out.
+ *
+ * Input is read and output written as UTF-8 bytes in large batches, with a
+ * named file mapped into memory rather than read through stdin.
+ *
+ * Options before the file name select another engine: an MSD radix sort on
+ * alphabet ranks run by AlphabetRadixSort, or an external sort for input
+ * larger than the heap run by ExternalAlphabetSort. All print the same.
+ *
+ *  -radix         radix sort the words in memory instead of building a Trie
+ *  -external      sort chunks in memory and merge them from temporary files
+ *  -memory MB     megabytes of words per chunk, implies -external; by
+ *                 default a quarter of the maximum heap
+ *  -tmpdir DIR    directory for the chunks, implies -external
  */
 public class AlphabetSort {
 
@@ -32,54 +50,60 @@ public class AlphabetSort {
     }
 
     /**
-     * Performs a depth-first search on the given fringe, utilizing a priority queue.
+     * Reads input from standard input and prints out the input words in
+     * alphabetical order.
      *
-     * Runtime O(N) - N = number of nodes in Trie
-     * @param fringe the fringe to execute DFS on
+     * Runtime: O(MN) - M = length of longest string
+     *                  N = number of lines in file
+     * @param args options, then an optional input file read instead of stdin
      */
-    public static void priorityDFS(PriorityQueue<Trie.TrieNode> fringe) {
-        //StringBuilder sb = new StringBuilder();
-        //String prefix = "";
-        int keyCount = 0;
-
-        while (!fringe.isEmpty()) {
-            Trie.TrieNode curr = fringe.poll();
-
-            if (curr.getEndOfWord()) {
-                System.out.println(curr.getPrev());
-                if (curr.getSuffix().isEmpty()) {
-                    if (keyCount > 0) {
-                        keyCount--;
-                    }
-                    continue;
-                }
+    public static void main(String[] args) throws IOException, IllegalArgumentException {
+        boolean radix = false;
+        boolean external = false;
+        long memory = Runtime.getRuntime().maxMemory() / 4;
+        File tmpDir = null;
+        int i = 0;
+        for (; i < args.length && args[i].startsWith("-"); i++) {
+            if (args[i].equals("-radix")) {
+                radix = true;
+            } else if (args[i].equals("-external")) {
+                external = true;
+            } else if (args[i].equals("-memory") && i + 1 < args.length) {
+                external = true;
+                memory = Long.parseLong(args[++i]) << 20;
+            } else if (args[i].equals("-tmpdir") && i + 1 < args.length) {
+                external = true;
+                tmpDir = new File(args[++i]);
+            } else {
+                throw new IllegalArgumentException("unknown option " + args[i]);
             }
+        }
 
-            for (char c : curr.getSuffix().keySet()) {
-                if (curr.getSuffix().keySet().size() > 1) {
-                    keyCount = curr.getSuffix().keySet().size();
-                }
-                fringe.add(curr.getSuffix().get(c));
+        if (i < args.length) {
+            try (LineReader inFile = new LineReader(args[i])) {
+                sort(inFile, radix, external, memory, tmpDir);
             }
+        } else {
+            sort(new LineReader(System.in), radix, external, memory, tmpDir);
         }
     }
 
-    /**
-     * Reads input from standard input and prints out the input words in
-     * alphabetical order.
-     *
-     * Runtime: O(MN) - M = length of longest string
-     *                  N = number of lines in file
-     * @param args ignored
-     */
-    public static void main(String[] args) throws FileNotFoundException, IllegalArgumentException {
-        Scanner inFile = new Scanner(System.in);
+    // Sorts the words read from inFile after its alphabet line to stdout
+    private static void sort(LineReader inFile, boolean radix, boolean external, long memory,
+                             File tmpDir) throws IOException {
+        String alphabet = inFile.readLine();
         // Check if alphabet is given
-        if (!inFile.hasNextLine()) {
+        if (alphabet == null) {
             throw new IllegalArgumentException("no alphabet!");
         }
+        if (external) {
+            LineWriter out = new LineWriter(System.out);
+            if (new ExternalAlphabetSort(alphabet, memory, tmpDir).sort(inFile, out) == 0) {
+                throw new IllegalArgumentException("no words!");
+            }
+            return;
+        }
 
-        String alphabet = inFile.nextLine();
         // Set priority values for alphabet
         Hashtable<Character, Integer> alphaPerm = new Hashtable<>();
         for (int i = 0; i < alphabet.length(); i++) {
@@ -90,27 +114,103 @@ public class AlphabetSort {
             alphaPerm.put(c, i);
         }
         // Check if words are present
-        if (!inFile.hasNextLine()) {
+        String word = inFile.readLine();
+        if (word == null) {
             throw new IllegalArgumentException("no words!");
         }
 
-        Trie wordTree = new Trie();
-        while (inFile.hasNextLine()) {
-            String word = inFile.nextLine();
+        if (radix) {
+            AlphabetRadixSort sorter = new AlphabetRadixSort(alphabet);
+            List<String> words = new ArrayList<>();
+            for (; word != null; word = inFile.readLine()) {
+                if (word.isEmpty()) {
+                    throw new IllegalArgumentException("String is empty.");
+                }
+                if (sorter.inAlphabet(word)) {
+                    words.add(word);
+                }
+            }
+            LineWriter out = new LineWriter(System.out);
+            for (String w : sorter.sortDistinct(words)) {
+                out.writeLine(w);
+            }
+            out.flush();
+            return;
+        }
+
+        // A Trie over the alphabet keeps children in alphabet order, so a
+        // pre-order walk lists the words sorted
+        Trie wordTree = new Trie(alphabet);
+        for (; word != null; word = inFile.readLine()) {
             if (!checkWordExists(word, alphaPerm)) {
                 continue;
             }
-            wordTree.asinsert(word, alphaPerm, alphabet.length());
+            wordTree.insert(word);
         }
+        LineWriter out = new LineWriter(System.out);
+        wordTree.forEachWord(out::writeLine);
+        out.flush();
+    }
 
-        // Implement a priority DFS on the Trie
-        PriorityQueue<Trie.TrieNode> fringe;
-        fringe = new PriorityQueue<>((o1, o2) -> o1.getPriority() - o2.getPriority());
-        Trie.TrieNode curr = wordTree.root;
+    /** Batches lines as UTF-8 bytes and writes them out a buffer at a time */
+    static final class LineWriter {
+        private final OutputStream out;
+        private final byte[] buf = new byte[1 << 16];
+        private int size;
 
-        for (char c : curr.getSuffix().keySet()) {
-            fringe.add(curr.getSuffix().get(c));
+        LineWriter(OutputStream out) {
+            this.out = out;
+        }
+
+        void writeLine(String s) {
+            // ASCII goes byte for byte; anything else is encoded whole
+            int n = s.length();
+            if (size + n + 1 <= buf.length) {
+                int i = 0;
+                while (i < n && s.charAt(i) < 0x80) {
+                    buf[size + i] = (byte) s.charAt(i);
+                    i++;
+                }
+                if (i == n) {
+                    size += n;
+                    buf[size++] = '\n';
+                    return;
+                }
+            }
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            if (size + bytes.length + 1 > buf.length) {
+                drain();
+            }
+            if (bytes.length + 1 > buf.length) {
+                write(bytes, bytes.length);
+                write(new byte[] {'\n'}, 1);
+                return;
+            }
+            System.arraycopy(bytes, 0, buf, size, bytes.length);
+            size += bytes.length;
+            buf[size++] = '\n';
+        }
+
+        void flush() {
+            drain();
+            try {
+                out.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void drain() {
+            write(buf, size);
+            size = 0;
+        }
+
+        private void write(byte[] bytes, int len) {
+            try {
+                out.write(bytes, 0, len);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
         }
-        priorityDFS(fringe);
     }
 }
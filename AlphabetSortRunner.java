@@ -1,5 +1,3 @@
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 
 public class AlphabetSortRunner {
@@ -8,8 +6,7 @@ public class AlphabetSortRunner {
             System.out.println("You must specify a file to feed to AlphabetSort.");
             System.exit(0);
         }
-        FileInputStream is = new FileInputStream(new File(args[0]));
-        System.setIn(is);
+        // AlphabetSort maps the named file instead of reading stdin
         AlphabetSort.main(args);
     }
 }
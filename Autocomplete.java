@@ -1,10 +1,27 @@
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Comparator;
-import java.util.PriorityQueue;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Implements autocomplete on prefixes for a given dictionary of terms and weights.
+ * Terms are inserted into a path-compressed Trie, which is then compiled into
+ * a frozen TrieIndex that answers every query.
+ *
+ * Thread safety: once constructed, an Autocomplete may be shared by any
+ * number of threads. weightOf, topMatch and topMatches take no locks and
+ * write no shared state, so query throughput scales with cores.
+ * precomputeTopMatches may run while queries are in flight; they keep using
+ * the previous cache until the new one is published. updateWeight, remove
+ * and buildInfixIndex run one at a time, so the infix index always agrees
+ * with the prefix index.
+ *
+ * Built with fold set, matching ignores case, accents and compatibility
+ * forms (see TermFolder): terms are indexed under their folds, queries are
+ * folded before the walk, and results are the terms as given.
  *
  * @author
  */
@@ -18,9 +35,35 @@ public class Autocomplete {
      * @param weights Array of weights.
      */
 
-    Trie AC = new Trie();
+    // Dictionaries at least this large are built by BulkTrieBuilder
+    static final int PARALLEL_THRESHOLD = 1 << 15;
+    // topMatchesBatch hands each fork-join task at most this many prefixes
+    static final int BATCH_CHUNK = 64;
+
+    final TrieIndex index;
+    // token-start index for infixTopMatches, null until buildInfixIndex
+    private volatile InfixIndex infix;
 
     public Autocomplete(String[] terms, double[] weights) {
+        this(terms, weights, false);
+    }
+
+    /**
+     * Initializes required data structures from parallel arrays, optionally
+     * matching without regard to case, accents or Unicode compatibility
+     * forms. When fold is true the index is keyed by TermFolder.fold of each
+     * term and every query is folded the same way, so "new york" and "Nueva
+     * Yórk" match "New York" and "Nueva York". Results are still the terms
+     * as given, and terms that differ only in case or accents all stay in
+     * the dictionary.
+     *
+     * Runtime: O(MN) - M = max length of input string terms
+     *                  N = number of items in input array
+     * @param terms Array of terms.
+     * @param weights Array of weights.
+     * @param fold true to match case- and accent-insensitively
+     */
+    public Autocomplete(String[] terms, double[] weights, boolean fold) {
         // Invalid argument exceptions
         if (terms == null || weights == null) {
             throw new NullPointerException("AC args are null");
@@ -29,18 +72,167 @@ public class Autocomplete {
             throw new IllegalArgumentException("term and array lengths are different");
         }
 
+        Trie AC;
+        String[] keys = fold ? foldKeys(terms) : terms;
+        if (terms.length >= PARALLEL_THRESHOLD) {
+            // Sort once and build one subtree per first char in parallel
+            AC = new BulkTrieBuilder(keys, terms, weights).build();
+        } else if (fold) {
+            AC = new Trie(true);
+            for (int i = 0; i < terms.length; i++) {
+                if (weights[i] < 0) {
+                    throw new IllegalArgumentException("negative weight");
+                }
+                // foldKeys has checked for duplicates
+                AC.acInsertNew(keys[i], terms[i], weights[i]);
+            }
+        } else {
+            AC = new Trie(true);
+            for (int i = 0; i < terms.length; i++) {
+                // Check for negative weights
+                if (weights[i] < 0) {
+                    throw new IllegalArgumentException("negative weight");
+                }
+                // Add string + weight value to Trie, checking for duplicates
+                if (!AC.acInsert(terms[i], weights[i])) {
+                    throw new IllegalArgumentException("duplicate terms");
+                }
+            }
+        }
+        // Freeze the trie; the TrieNode graph becomes garbage here
+        index = TrieIndex.compile(AC, fold ? TrieIndex.FOLDED : 0);
+    }
+
+    // Folded keys of terms. Terms that fold alike keep the plain key for the
+    // first and key + '\0' + ordinal for the rest, skipping any ordinal key
+    // that is already some other term's fold, so every key stays unique.
+    private static String[] foldKeys(String[] terms) {
+        String[] keys = new String[terms.length];
+        HashSet<String> seen = new HashSet<>();
+        HashMap<String, Integer> used = new HashMap<>();    // key -> ordinals taken
         for (int i = 0; i < terms.length; i++) {
-            // Check for duplicates
-            if (AC.words.contains(terms[i])) {
+            if (terms[i] == null) {
+                throw new IllegalArgumentException("String is null.");
+            }
+            if (!seen.add(terms[i])) {
                 throw new IllegalArgumentException("duplicate terms");
             }
-            // Check for negative weights
-            if (weights[i] < 0) {
-                throw new IllegalArgumentException("negative weight");
+            keys[i] = TermFolder.fold(terms[i]);
+        }
+        for (int i = 0; i < terms.length; i++) {
+            used.merge(keys[i], 1, Integer::sum);
+        }
+        HashMap<String, Integer> next = new HashMap<>();
+        for (int i = 0; i < terms.length; i++) {
+            String key = keys[i];
+            if (used.get(key) == 1) {
+                continue;
+            }
+            int ordinal = next.getOrDefault(key, 0);
+            if (ordinal > 0) {
+                while (ordinal <= Character.MAX_VALUE
+                        && used.containsKey(key + '\0' + (char) ordinal)) {
+                    ordinal++;
+                }
+                if (ordinal > Character.MAX_VALUE) {
+                    throw new IllegalArgumentException("too many terms fold to " + key);
+                }
+                keys[i] = key + '\0' + (char) ordinal;
+                used.put(keys[i], 1);
             }
-            // Add string + weight value to Trie
-            AC.acInsert(terms[i], weights[i]);
+            next.put(key, ordinal + 1);
+        }
+        return keys;
+    }
+
+    /** Index key of a query or term: its fold if this index is folded */
+    String key(String s) {
+        return index.folded() ? TermFolder.fold(s) : s;
+    }
+
+    // Node of term itself, NONE if it is not in the dictionary. Terms that
+    // fold alike sit at key, key + "\0\1", key + "\0\2", ... with no gaps,
+    // since index nodes are never dropped.
+    private int node(String term) {
+        if (!index.folded()) {
+            return index.find(term);
+        }
+        String key = TermFolder.fold(term);
+        for (int j = 0; j <= Character.MAX_VALUE; j++) {
+            int n = index.find(j == 0 ? key : key + '\0' + (char) j);
+            if (n == TrieIndex.NONE) {
+                return TrieIndex.NONE;
+            }
+            int id = index.termId.get(n);
+            if (id != TrieIndex.NONE && index.term(id).equals(term)) {
+                return n;
+            }
+        }
+        return TrieIndex.NONE;
+    }
+
+    /**
+     * Opens an index file written by write (or by AutocompleteIndexBuilder).
+     * The file is memory-mapped and queried in place, so startup costs only
+     * the time to map it.
+     *
+     * Runtime: O(1)
+     * @param indexFile path of the index file
+     */
+    public Autocomplete(String indexFile) throws IOException {
+        if (indexFile == null) {
+            throw new NullPointerException("index file is null");
         }
+        index = TrieIndex.map(indexFile);
+    }
+
+    /**
+     * Writes this dictionary, including any precomputed top matches, to an
+     * index file that Autocomplete(String) can map.
+     *
+     * @param indexFile path of the index file to create or overwrite
+     */
+    public void write(String indexFile) throws IOException {
+        index.write(indexFile);
+    }
+
+    /**
+     * Reads a dictionary file: a line holding the count N, then N lines of
+     * weight, a tab, and the term.
+     *
+     * Runtime: O(N*L) - N = number of terms, L = average length of a line
+     * @param path - path of the dictionary file
+     * @return the terms and weights, in file order
+     */
+    static Dictionary load(String path) throws IOException {
+        In in = new In(path);
+        int N = Integer.parseInt(in.readLine().trim());
+        String[] terms = new String[N];
+        double[] weights = new double[N];
+        for (int i = 0; i < N; i++) {
+            String line = in.hasNextLine() ? in.readLine() : null;
+            int tab = line == null ? -1 : line.indexOf('\t');
+            if (tab < 0) {
+                throw new IOException(path + ": term " + (i + 1) + " of " + N + " is not weight\\tterm");
+            }
+            weights[i] = Double.parseDouble(line.substring(0, tab).trim());
+            terms[i] = line.substring(tab + 1);
+        }
+        return new Dictionary(terms, weights);
+    }
+
+    /**
+     * Opens an index file ending in .idx, or else builds from a dictionary file.
+     *
+     * Runtime: O(1) for an index file, otherwise that of load and the constructor
+     * @param path - path of the index or dictionary file
+     */
+    static Autocomplete open(String path) throws IOException {
+        if (path.endsWith(".idx")) {
+            return new Autocomplete(path);
+        }
+        Dictionary d = load(path);
+        return new Autocomplete(d.terms, d.weights);
     }
 
     /**
@@ -52,18 +244,68 @@ public class Autocomplete {
      */
     public double weightOf(String term) {
         // Invalid argument exceptions
-        if (!AC.words.contains(term) || term.equals("") || term == null) {
+        if (term == null || term.equals("")) {
             return 0.0;
         }
 
-        // Iterate through Trie until we reach the endNode corresponding to term
-        Trie.TrieNode curr = AC.root;
-        for (int i = 0; i < term.length(); i++) {
-            char c = term.charAt(i);
-            curr = curr.getSuffix().get(c);
+        // Walk the index until we reach the node corresponding to term
+        int curr = node(term);
+        if (curr == TrieIndex.NONE) {
+            return 0.0;
         }
+        return index.weight(curr);
+    }
 
-        return curr.getPriority2();
+    /**
+     * Changes the weight of a term already in the dictionary. Only the path
+     * to the term is updated, so no rebuild is needed; queries running
+     * meanwhile see either the old weight or the new one.
+     *
+     * Runtime: O(MF) - M = length of term, F = max number of children
+     * @param term - term to reweight
+     * @param weight - new weight
+     * @return false if term is not in the dictionary
+     * @throws UnsupportedOperationException if opened from an index file
+     */
+    public synchronized boolean updateWeight(String term, double weight) {
+        if (term == null) {
+            throw new IllegalArgumentException("String is null.");
+        }
+        if (weight < 0) {
+            throw new IllegalArgumentException("negative weight");
+        }
+        int curr = node(term);
+        if (!index.updateWeight(curr, weight)) {
+            return false;
+        }
+        if (infix != null) {
+            infix.setWeight(index.termId.get(curr), weight);
+        }
+        return true;
+    }
+
+    /**
+     * Removes a term from the dictionary without a rebuild.
+     *
+     * Runtime: O(MF) - M = length of term, F = max number of children
+     * @param term - term to remove
+     * @return false if term is not in the dictionary
+     * @throws UnsupportedOperationException if opened from an index file
+     */
+    public synchronized boolean remove(String term) {
+        if (term == null) {
+            throw new IllegalArgumentException("String is null.");
+        }
+        // the node keeps no term id once removed, so take it beforehand
+        int curr = node(term);
+        int id = curr == TrieIndex.NONE ? TrieIndex.NONE : index.termId.get(curr);
+        if (!index.remove(curr)) {
+            return false;
+        }
+        if (infix != null) {
+            infix.setWeight(id, Double.NEGATIVE_INFINITY);
+        }
+        return true;
     }
 
     /**
@@ -79,41 +321,26 @@ public class Autocomplete {
             throw new NullPointerException("topMatch prefix is null");
         }
 
-        Trie.TrieNode curr = AC.root;
-        // If empty prefix, return string corresponding to max weight
-        if (prefix.equals("")) {
-            return curr.getPrev();
+        // find node corresponding to end of prefix, then take the path where
+        // the child node's max priority equals the current max priority
+        int curr = index.walk(key(prefix));
+        if (curr == TrieIndex.NONE) {
+            return null;
         }
-
-        // iterate until reaching node corresponding to end of prefix
-        for (int i = 0; i < prefix.length(); i++) {
-            char c = prefix.charAt(i);
-            curr = curr.getSuffix().get(c);
-        }
-
-        // iterate through each child node, taking the path where the child node's max
-        // priority is equal to or greater than the current max priority
-        double maxWeight = curr.getMaxPriority();
-        while (curr.getPriority2() < maxWeight) {
-            for (char c : curr.getSuffix().keySet()) {
-                Trie.TrieNode temp = curr.getSuffix().get(c);
-                if (temp.getMaxPriority() == maxWeight) {
-                    curr = temp;
-                    break;
-                }
-            }
-        }
-        // return string corresponding to max priority term
-        return curr.getPrev();
+        return index.topMatch(curr);
     }
 
     /**
      * Returns the top k matching terms (in descending order of weight) as an iterable.
      * If there are less than k matches, return all the matching terms.
      *
-     * Runtime:O(N + M + K) - N = number of nodes in Trie
-     *                        M = length of prefix
-     *                        K = number of terms to return (k)
+     * The iterable is lazy: each iterator runs the search only as far as it
+     * is read, so asking for a large k and stopping early costs only the
+     * results actually taken.
+     *
+     * Runtime:O(M + R log F) - M = length of prefix
+     *                          R = number of terms read, at most k
+     *                          F = size of the search fringe
      * @param prefix - inputted prefix string
      * @param k - number of matches to return
      * @return Iterable of top matching strings
@@ -127,100 +354,339 @@ public class Autocomplete {
             throw new IllegalArgumentException("k is negative");
         }
 
-        Trie.TrieNode curr = AC.root;
         // Find node corresponding to end of prefix
-        for (int i = 0; i < prefix.length(); i++) {
-            char c = prefix.charAt(i);
-            if (!curr.getSuffix().containsKey(c)) {
-                Iterable<String> retVal = new ArrayList<>();
-                return retVal;
-            }
-            curr = curr.getSuffix().get(c);
-        }
-
-        // Perform Priority-Queue based DFS search on current node + children
-        // ordered by maxPriority
-        PriorityQueue<Trie.TrieNode> fringe;
-        fringe = new PriorityQueue<>(Comparator.comparingDouble(Trie.TrieNode::getDepthPriority));
-        fringe.add(curr);
-        String[] dfs = priorityDFS(fringe, k);
-        fringe.clear();
-
-        // Convert string array to iterable
-        int i = 0;
-        for (; i < dfs.length; i++) {
-            if (dfs[i] == null) {
-                break;
+        int curr = index.walk(key(prefix));
+        if (curr == TrieIndex.NONE || k == 0) {
+            Iterable<String> retVal = new ArrayList<>();
+            return retVal;
+        }
+
+        // Best-first search on current node + children ordered by
+        // maxPriority, run as the caller iterates
+        return index.matches(curr, k);
+    }
+
+    /** topMatches with each term's weight, for callers merging several
+     *  dictionaries; empty if nothing matches */
+    Iterable<Match> weightedMatches(String prefix, int k) {
+        int curr = index.walk(key(prefix));
+        if (curr == TrieIndex.NONE || k == 0) {
+            return new ArrayList<>();
+        }
+        return index.weightedMatches(curr, k);
+    }
+
+    /**
+     * Writes the top out.length matching terms (in descending order of
+     * weight) into out, for callers that query in a loop and want no
+     * garbage. Search scratch space is kept per thread, so once warm a query
+     * allocates nothing; on an index opened from a file only the returned
+     * Strings are new.
+     *
+     * Runtime:O(M + K log F) - M = length of prefix
+     *                          K = out.length
+     *                          F = size of the search fringe
+     * @param prefix - inputted prefix string
+     * @param out - buffer receiving the matches; its length is k
+     * @return number of matches written to the front of out
+     */
+    public int topMatches(String prefix, String[] out) {
+        // Invalid argument exceptions
+        if (prefix == null) {
+            throw new IllegalArgumentException("invalid prefix");
+        }
+        if (out == null) {
+            throw new IllegalArgumentException("output buffer is null");
+        }
+
+        int curr = index.walk(key(prefix));
+        if (curr == TrieIndex.NONE || out.length == 0) {
+            return 0;
+        }
+        return index.priorityDFS(curr, out, null);
+    }
+
+    /**
+     * Returns the top k matches of every prefix in one call; retVal[i] holds
+     * the matches of prefixes[i] in descending order of weight. Prefixes are
+     * sorted first so a run sharing a common start descends through it once,
+     * repeated prefixes are searched once, and batches longer than
+     * BATCH_CHUNK are split across the common fork-join pool.
+     *
+     * Runtime: O(P log P + C + P K log F) - P = number of prefixes
+     *                                       C = total length of prefixes
+     *                                       F = size of the search fringe
+     * @param prefixes - inputted prefix strings
+     * @param k - number of matches per prefix
+     * @return matches of each prefix, in the order of prefixes
+     */
+    public String[][] topMatchesBatch(String[] prefixes, int k) {
+        return topMatchesBatch(prefixes, k, ForkJoinPool.commonPool());
+    }
+
+    /** topMatchesBatch splitting large batches across pool */
+    String[][] topMatchesBatch(String[] prefixes, int k, ForkJoinPool pool) {
+        // Invalid argument exceptions
+        if (prefixes == null) {
+            throw new IllegalArgumentException("prefixes is null");
+        }
+        if (k < 0) {
+            throw new IllegalArgumentException("k is negative");
+        }
+        String[] keys = new String[prefixes.length];
+        int[] order = new int[prefixes.length];
+        for (int i = 0; i < prefixes.length; i++) {
+            if (prefixes[i] == null) {
+                throw new IllegalArgumentException("invalid prefix");
             }
+            keys[i] = key(prefixes[i]);
+            order[i] = i;
         }
-        String[] retVal = new String[i];
-        for (int j = 0; j < i; j++) {
-            retVal[j] = dfs[j];
-        }
-        Iterable<String> iterRet = Arrays.asList(retVal);
-        return iterRet;
-    }
-
-    /** Depth first search based on node priority - higher priority nodes will
-     * be searched first
-     *
-     * Runtime: O(N) - N = number of nodes in Trie
-     * @param fringe - inputted priority queue, sorted by inverse maxPriority
-     * @param k - number of items to look for
-     * @return String array of terms ordered by highest priority with respect to prefix
-     */
-    public String[] priorityDFS(PriorityQueue<Trie.TrieNode> fringe, int k) {
-        int index = 0;
-        String[] retVal = new String[k];
-        // Breaks when no more strings to return or have found k items
-        while (!fringe.isEmpty() && k > 0) {
-            Trie.TrieNode curr = fringe.poll();
-
-            if (curr.getEndOfWord()) {
-                // adds string to retVal if the priority is the maxpriority
-                if (curr.getMaxPriority() == curr.getPriority2()) {
-                    retVal[index] = curr.getPrev();
-                    index++;
-                    k--;
-                // requeue string with new maxpriority set to actual priority
-                // deals with edge cases where strings with similar prefixes have
-                // conflicting weights (reset children to none to prevent repeats)
-                } else {
-                    fringe.add(new Trie.TrieNode(curr.getPriority2(), curr.getPrev()));
+        sortByKey(order, keys);
+
+        String[][] retVal = new String[prefixes.length][];
+        BatchTask all = new BatchTask(keys, order, 0, order.length, k, retVal);
+        if (order.length <= BATCH_CHUNK) {
+            all.compute();
+        } else {
+            pool.invoke(all);
+        }
+        return retVal;
+    }
+
+    // Sorts the indices in order by keys[index], a bottom-up merge sort
+    // on the int array itself so no index is boxed
+    private static void sortByKey(int[] order, String[] keys) {
+        int[] src = order;
+        int[] dst = new int[order.length];
+        for (int width = 1; width < order.length; width *= 2) {
+            for (int lo = 0; lo < order.length; lo += 2 * width) {
+                int mid = Math.min(lo + width, order.length);
+                int hi = Math.min(lo + 2 * width, order.length);
+                int i = lo;
+                int j = mid;
+                for (int out = lo; out < hi; out++) {
+                    if (j >= hi || (i < mid && keys[src[i]].compareTo(keys[src[j]]) <= 0)) {
+                        dst[out] = src[i++];
+                    } else {
+                        dst[out] = src[j++];
+                    }
                 }
             }
+            int[] t = src;
+            src = dst;
+            dst = t;
+        }
+        if (src != order) {
+            System.arraycopy(src, 0, order, 0, order.length);
+        }
+    }
 
-            if (curr.getSuffix() == null || curr.getSuffix().isEmpty()) {
-                continue;
+    /** Answers the sorted prefixes order[lo..hi - 1], splitting large runs */
+    @SuppressWarnings("serial")
+    private class BatchTask extends RecursiveAction {
+        private final String[] prefixes;
+        private final int[] order;
+        private final int lo;
+        private final int hi;
+        private final int k;
+        private final String[][] retVal;
+
+        BatchTask(String[] prefixes, int[] order, int lo, int hi, int k, String[][] retVal) {
+            this.prefixes = prefixes;
+            this.order = order;
+            this.lo = lo;
+            this.hi = hi;
+            this.k = k;
+            this.retVal = retVal;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo > BATCH_CHUNK) {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new BatchTask(prefixes, order, lo, mid, k, retVal),
+                    new BatchTask(prefixes, order, mid, hi, k, retVal));
+                return;
             }
-            // queue children nodes
-            for (char c : curr.getSuffix().keySet()) {
-                fringe.add(curr.getSuffix().get(c));
+            int[] nodes = new int[hi - lo];
+            index.walkSorted(prefixes, order, lo, hi, nodes);
+            for (int i = lo; i < hi; i++) {
+                if (i > lo && prefixes[order[i]].equals(prefixes[order[i - 1]])) {
+                    retVal[order[i]] = retVal[order[i - 1]].clone();
+                } else if (nodes[i - lo] == TrieIndex.NONE || k == 0) {
+                    retVal[order[i]] = new String[0];
+                } else {
+                    retVal[order[i]] = index.priorityDFS(nodes[i - lo], k);
+                }
             }
         }
-        return retVal;
+    }
+
+    /**
+     * Returns the top k terms (in descending order of weight) that start
+     * with a string within maxEdits insertions, deletions or substitutions
+     * of prefix, so "amercia" still finds "america". With maxEdits 0 this
+     * is topMatches. The search is best-first on each node's maxPriority,
+     * carrying one edit-distance row per frontier node, and stops as soon as
+     * k terms beat every subtree left unexplored.
+     *
+     * Runtime: O(V M log V) - M = length of prefix
+     *                         V = number of nodes within maxEdits of a prefix
+     *                             of prefix
+     * @param prefix - inputted prefix string, possibly misspelled
+     * @param k - number of matches to return
+     * @param maxEdits - number of edits allowed, typically 1 or 2
+     * @return Iterable of top matching strings
+     */
+    public Iterable<String> fuzzyTopMatches(String prefix, int k, int maxEdits) {
+        // Invalid argument exceptions
+        if (prefix == null) {
+            throw new IllegalArgumentException("invalid prefix");
+        }
+        if (k < 0) {
+            throw new IllegalArgumentException("k is negative");
+        }
+        if (maxEdits < 0) {
+            throw new IllegalArgumentException("maxEdits is negative");
+        }
+        if (k == 0) {
+            return new ArrayList<>();
+        }
+        return Arrays.asList(index.fuzzyTopTerms(key(prefix), k, maxEdits));
+    }
+
+    /**
+     * Builds the index behind infixTopMatches: a suffix array over every
+     * token start of every term, with a segment tree of range max weights.
+     * Takes memory proportional to the number of words across all terms, so
+     * it is only built on request. Later updateWeight and remove calls keep
+     * it current.
+     *
+     * Runtime: O(T log T) - T = number of words across all terms
+     */
+    public synchronized void buildInfixIndex() {
+        infix = index.infixIndex();
+    }
+
+    /**
+     * Returns the top k terms (in descending order of weight) containing a
+     * word that starts with s, so "York" finds "New York" as well as
+     * "Yorkshire"; matching is case-sensitive unless the Autocomplete is
+     * folded. Words start at the beginning of the term and at each letter
+     * or digit that follows another kind of char. s may span several words
+     * ("York Ci" finds "New York City"). Matching terms form
+     * one range of the suffix array; the best term is the range's max, and
+     * the range is then split around it, so only about k entries are
+     * visited however many terms match.
+     *
+     * Runtime: O(S log T + k log k) - S = length of s
+     *                                 T = number of words across all terms
+     * @param s - start of a word anywhere in the term
+     * @param k - number of matches to return
+     * @return Iterable of top matching strings
+     * @throws IllegalStateException if buildInfixIndex has not been called
+     */
+    public Iterable<String> infixTopMatches(String s, int k) {
+        // Invalid argument exceptions
+        if (s == null) {
+            throw new IllegalArgumentException("invalid substring");
+        }
+        if (k < 0) {
+            throw new IllegalArgumentException("k is negative");
+        }
+        InfixIndex infix = this.infix;
+        if (infix == null) {
+            throw new IllegalStateException("infix index not built");
+        }
+        return Arrays.asList(infix.topTerms(key(s), k));
+    }
+
+    /**
+     * Precomputes the top K matches of every prefix of at most maxDepth
+     * characters, and of every prefix matching at least minSubtreeTerms terms.
+     * topMatches(prefix, k) with k <= K on those prefixes then costs a prefix
+     * walk plus an array copy. updateWeight and remove keep the cached lists
+     * current.
+     *
+     * Runtime: O(C N log N) - C = number of cached prefixes
+     *                         N = number of nodes below each
+     * @param K - matches stored per cached prefix
+     * @param maxDepth - longest prefix always cached, -1 for none
+     * @param minSubtreeTerms - cache any prefix with at least this many matches
+     */
+    public void precomputeTopMatches(int K, int maxDepth, int minSubtreeTerms) {
+        if (K <= 0) {
+            throw new IllegalArgumentException("K must be positive");
+        }
+        index.precompute(K, maxDepth, minSubtreeTerms);
+    }
+
+    /**
+     * Estimates the bytes precomputeTopMatches would add with these settings,
+     * without building the cache.
+     */
+    public long estimateTopMatchesCache(int K, int maxDepth, int minSubtreeTerms) {
+        return index.estimateCache(K, maxDepth, minSubtreeTerms);
+    }
+
+    /**
+     * Returns a human readable breakdown of the index's memory use, including
+     * the top-K cache if one was precomputed.
+     */
+    public String memoryReport() {
+        return index.memoryReport();
+    }
+
+    /**
+     * A matching term together with its weight.
+     */
+    public static class Match {
+        private final String term;
+        private final double weight;
+
+        public Match(String term, double weight) {
+            this.term = term;
+            this.weight = weight;
+        }
+
+        public String getTerm() {
+            return term;
+        }
+
+        public double getWeight() {
+            return weight;
+        }
+
+        @Override
+        public String toString() {
+            return weight + "\t" + term;
+        }
+    }
+
+    /**
+     * The terms and weights of a dictionary file, in file order.
+     */
+    static class Dictionary {
+        final String[] terms;
+        final double[] weights;
+
+        Dictionary(String[] terms, double[] weights) {
+            this.terms = terms;
+            this.weights = weights;
+        }
     }
 
     /**
      * Test client. Reads the data from the file, then repeatedly reads autocomplete
      * queries from standard input and prints out the top k matching terms.
      *
-     * @param args takes the name of an input file and an integer k as
-     *             command-line arguments
+     * @param args takes the name of an input file (or an index file ending
+     *             in .idx) and an integer k as command-line arguments
      */
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
         // initialize autocomplete data structure
-        In in = new In(args[0]);
-        int N = in.readInt();
-        String[] terms = new String[N];
-        double[] weights = new double[N];
-        for (int i = 0; i < N; i++) {
-            weights[i] = in.readDouble();   // read the next weight
-            in.readChar();                  // scan past the tab
-            terms[i] = in.readLine();       // read the next term
-        }
-
-        Autocomplete autocomplete = new Autocomplete(terms, weights);
+        Autocomplete autocomplete = open(args[0]);
 
         // process queries from standard input
         int k = Integer.parseInt(args[1]);
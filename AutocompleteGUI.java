@@ -2,7 +2,8 @@
  *  @author Matthew Drabick
  *  Compilation:  javac AutocompleteGUI.java
  *  Execution:    java  AutocompleteGUI input.txt k
- *  Dependencies: In.java Autocomplete.java
+ *                java  AutocompleteGUI input.idx k
+ *  Dependencies: In.java Autocomplete.java AutocompleteSession.java
  *  Data files:   
  *    
  *    
@@ -37,13 +38,21 @@ import java.awt.event.*;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.swing.*;
 
 public class AutocompleteGUI extends JFrame {
     private static int DEF_WIDTH  = 600;
     private static int DEF_HEIGHT = 400;
     private static String searchURL = "https://www.google.com/search?q=";
+    // wait this long after a keystroke before querying
+    private static final int DEBOUNCE_MS = 30;
 
     // display top k results
     private final int k;
@@ -99,6 +108,16 @@ public class AutocompleteGUI extends JFrame {
     private class AutocompletePanel extends JPanel {
         private final JTextField searchText;
         private Autocomplete auto;
+        private AutocompleteSession session;    // used on the suggester thread only
+        // suggestions are computed off the event dispatch thread
+        private final ScheduledExecutorService suggester =
+            Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "autocomplete-suggester");
+                t.setDaemon(true);
+                return t;
+            });
+        private ScheduledFuture<?> pending;     // latest query, event dispatch thread only
+        private final AtomicLong generation = new AtomicLong();   // bumped per request
         private String[] results = new String[k]; 
         private JList suggestions;
        
@@ -110,20 +129,13 @@ public class AutocompleteGUI extends JFrame {
         public AutocompletePanel(String filename) {
             super();
 
-            // read in the data
-            In in = new In(filename);
-            int N = Integer.parseInt(in.readLine());
-            String[] terms = new String[N];
-            double[] weights = new double[N];
-            for (int i = 0; i < N; i++) {
-                String line = in.readLine();
-                int tab = line.indexOf('\t');
-                weights[i] = Double.parseDouble(line.substring(0, tab).trim());
-                terms[i] = line.substring(tab + 1);
+            // read in the data, or map a prebuilt index file
+            try {
+                auto = Autocomplete.open(filename);
+            } catch (IOException e) {
+                throw new IllegalArgumentException("could not open " + filename, e);
             }
-
-            // create the autocomplete object
-            auto = new Autocomplete(terms, weights);
+            session = new AutocompleteSession(auto);
 
             GroupLayout layout = new GroupLayout(this);
             this.setLayout(layout);
@@ -264,46 +276,72 @@ public class AutocompleteGUI extends JFrame {
         }
 
         /**
-         * Makes a call to the implementation of Autocomplete to get suggestions
-         * for the currently entered text.
+         * Requests suggestions for the currently entered text. The query runs
+         * on a background thread once typing pauses for DEBOUNCE_MS; each
+         * call supersedes any earlier query still waiting or running, and
+         * only the latest result is shown. Call on the event dispatch thread.
          * @param text string to search for
          */
         public void getSuggestions(String text) {
             text = text.trim();
+            long gen = generation.incrementAndGet();
+            if (pending != null) {
+                pending.cancel(true);
+            }
             if (text.equals("")) {
                 suggestions.clearSelection();
                 suggestions.setVisible(false);
+                return;
             }
-            else {
-                int textLen = text.length();
-                LinkedList<String> resultQ = new LinkedList<>();
-                LinkedList<Double> ds = new LinkedList<Double>();
-                for (String term : auto.topMatches(text, k)) {
-                    resultQ.offer(term);
-                    ds.offer(auto.weightOf(term));
-                }
-                if (!resultQ.isEmpty()) {
-                    results = new String[resultQ.size()];
-                    for (int i = 0; i < results.length; i++) {
-                        results[i] = resultQ.poll();
-                        /*Modified to include the weights of each term and a delimiter "|" to ensure that 
-                         * the search does not include the weight.
-                         */
-                        results[i] = "<html><span style=\"color:#C0C0C0;\">" + ds.poll() + "</span>" + "|"
-                            + results[i].substring(0, textLen) + "<b>" + results[i].substring(textLen) + "</b></html>";
-                    }
-                    suggestions.setListData(results);
-                    suggestions.setVisible(true);
-                    //suggestions.setSelectedIndex(0); // Pressing enter automatically selects the first one if nothing has been 
+            final String query = text;
+            pending = suggester.schedule(() -> computeSuggestions(query, gen),
+                DEBOUNCE_MS, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * Runs on the suggester thread: queries the session and hands the
+         * formatted rows to the event dispatch thread, giving up as soon as a
+         * newer keystroke bumps the generation.
+         */
+        private void computeSuggestions(String text, long gen) {
+            int textLen = text.length();
+            // the session keeps its place in the index between keystrokes
+            session.setText(text);
+            List<String> rows = new ArrayList<>();
+            for (Autocomplete.Match match : session.matches(k)) {
+                if (generation.get() != gen) {
+                    return;
                 }
-                else {
-                    // No suggestions
-                    suggestions.setVisible(false);
-                    suggestions.clearSelection();
+                String term = match.getTerm();
+                // on a folded index a match may be shorter than the text typed
+                int split = Math.min(textLen, term.length());
+                /*Modified to include the weights of each term and a delimiter "|" to ensure that 
+                 * the search does not include the weight.
+                 */
+                rows.add("<html><span style=\"color:#C0C0C0;\">" + match.getWeight() + "</span>" + "|"
+                    + term.substring(0, split) + "<b>" + term.substring(split) + "</b></html>");
+            }
+            SwingUtilities.invokeLater(() -> {
+                if (generation.get() == gen) {
+                    showSuggestions(rows);
                 }
+            });
+        }
+
+        private void showSuggestions(List<String> rows) {
+            if (!rows.isEmpty()) {
+                results = rows.toArray(new String[0]);
+                suggestions.setListData(results);
+                suggestions.setVisible(true);
+                //suggestions.setSelectedIndex(0); // Pressing enter automatically selects the first one if nothing has been 
+            }
+            else {
+                // No suggestions
+                suggestions.setVisible(false);
+                suggestions.clearSelection();
             }
         }
-        
+
         public String getSelectedText() {
             if (!suggestions.isSelectionEmpty()) {
                 String selection = (String) suggestions.getSelectedValue();
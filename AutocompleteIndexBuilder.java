@@ -0,0 +1,43 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Builds an index file from a dictionary of terms and weights, so that
+ * Autocomplete and AutocompleteGUI can map it at startup instead of parsing
+ * and inserting every term again.
+ *
+ *  % java AutocompleteIndexBuilder cities.txt cities.idx
+ *  % java AutocompleteIndexBuilder cities.txt cities.idx 10 3 1000
+ *  % java AutocompleteIndexBuilder -fold cities.txt cities.idx
+ *
+ * The optional arguments precompute the top K matches of every prefix of at
+ * most maxDepth chars, and of every prefix with at least minSubtreeTerms
+ * matches, and store them in the index as well. -fold builds a case- and
+ * accent-insensitive index; the flag is kept in the file.
+ */
+public class AutocompleteIndexBuilder {
+    public static void main(String[] args) throws IOException {
+        boolean fold = args.length > 0 && args[0].equals("-fold");
+        if (fold) {
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
+        if (args.length != 2 && args.length != 5) {
+            System.out.println("usage: AutocompleteIndexBuilder [-fold] input.txt output.idx "
+                + "[K maxDepth minSubtreeTerms]");
+            System.exit(1);
+        }
+
+        long startTime = System.currentTimeMillis();
+        Autocomplete.Dictionary d = Autocomplete.load(args[0]);
+        Autocomplete autocomplete = new Autocomplete(d.terms, d.weights, fold);
+        if (args.length == 5) {
+            autocomplete.precomputeTopMatches(Integer.parseInt(args[2]),
+                Integer.parseInt(args[3]), Integer.parseInt(args[4]));
+        }
+        autocomplete.write(args[1]);
+
+        long endTime = System.currentTimeMillis();
+        System.out.print(autocomplete.memoryReport());
+        System.out.println("wrote " + args[1] + " in " + (endTime - startTime) + "ms");
+    }
+}
@@ -0,0 +1,167 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Drives an AutocompleteServer with prefixes of the terms in a dictionary
+ * and reports the throughput and latency it achieved. Each connection keeps
+ * depth requests in flight, sending the next as soon as an answer arrives,
+ * and a request's latency runs from its send to the end of its answer. The
+ * first second is warm-up and not counted.
+ *
+ *  % java AutocompleteServer cities.txt 7070
+ *  % java AutocompleteLoadGenerator localhost 7070 cities.txt
+ *  % java AutocompleteLoadGenerator localhost 7070 cities.txt 8 16 10 10
+ *
+ * The optional arguments are connections, depth, seconds and k, by default
+ * 4, 8, 10 and 10.
+ */
+public class AutocompleteLoadGenerator {
+    public static void main(String[] args) throws Exception {
+        if (args.length != 3 && args.length != 7) {
+            System.out.println("usage: AutocompleteLoadGenerator host port dictionary.txt "
+                + "[connections depth seconds k]");
+            System.exit(1);
+        }
+        String host = args[0];
+        int port = Integer.parseInt(args[1]);
+        int connections = args.length == 7 ? Integer.parseInt(args[3]) : 4;
+        int depth = args.length == 7 ? Integer.parseInt(args[4]) : 8;
+        int seconds = args.length == 7 ? Integer.parseInt(args[5]) : 10;
+        int k = args.length == 7 ? Integer.parseInt(args[6]) : 10;
+
+        // queries are prefixes of 1 to 6 chars of random terms
+        String[] terms = Autocomplete.load(args[2]).terms;
+        byte[][] requests = new byte[Math.min(terms.length, 100000)][];
+        Random rng = new Random(20);
+        for (int i = 0; i < requests.length; i++) {
+            String term = terms[rng.nextInt(terms.length)];
+            String prefix = term.substring(0, Math.min(term.length(), 1 + rng.nextInt(6)));
+            requests[i] = (k + "\t" + prefix + "\n").getBytes(StandardCharsets.UTF_8);
+        }
+
+        long start = System.nanoTime();
+        long measureFrom = start + 1_000_000_000L;
+        long end = measureFrom + seconds * 1_000_000_000L;
+        Client[] clients = new Client[connections];
+        Thread[] threads = new Thread[connections];
+        for (int i = 0; i < connections; i++) {
+            clients[i] = new Client(new Socket(host, port), requests, depth, i, measureFrom, end);
+            threads[i] = new Thread(clients[i], "load-" + i);
+            threads[i].start();
+        }
+        long count = 0;
+        for (int i = 0; i < connections; i++) {
+            threads[i].join();
+            if (clients[i].failure != null) {
+                throw clients[i].failure;
+            }
+            count += clients[i].count;
+        }
+
+        // merge every connection's latencies
+        long[] latencies = new long[(int) count];
+        int n = 0;
+        for (Client client : clients) {
+            System.arraycopy(client.latencies, 0, latencies, n, client.count);
+            n += client.count;
+        }
+        Arrays.sort(latencies);
+        System.out.printf("%d requests over %d connections, depth %d, k = %d%n",
+            count, connections, depth, k);
+        System.out.printf("%.0f QPS%n", count / (double) seconds);
+        if (count > 0) {
+            System.out.printf("latency us: p50 %.1f  p99 %.1f  p99.9 %.1f  max %.1f%n",
+                percentile(latencies, 0.50), percentile(latencies, 0.99),
+                percentile(latencies, 0.999), latencies[latencies.length - 1] / 1000.0);
+        }
+    }
+
+    // Latency at quantile q of sorted nanosecond latencies, in microseconds
+    private static double percentile(long[] sorted, double q) {
+        int i = (int) Math.ceil(q * sorted.length) - 1;
+        return sorted[Math.max(i, 0)] / 1000.0;
+    }
+
+    /** One pipelined connection */
+    private static final class Client implements Runnable {
+        private final Socket socket;
+        private final byte[][] requests;
+        private final int depth;
+        private final long measureFrom;
+        private final long end;
+        private int next;
+        long[] latencies = new long[1 << 16];
+        int count;
+        Exception failure;
+
+        Client(Socket socket, byte[][] requests, int depth, int seed, long measureFrom, long end)
+            throws IOException {
+            this.socket = socket;
+            this.requests = requests;
+            this.depth = depth;
+            this.measureFrom = measureFrom;
+            this.end = end;
+            next = seed * 7919 % requests.length;
+            socket.setTcpNoDelay(true);
+        }
+
+        @Override
+        public void run() {
+            try (Socket s = socket) {
+                OutputStream out = new BufferedOutputStream(s.getOutputStream());
+                InputStream in = new BufferedInputStream(s.getInputStream());
+                ArrayDeque<Long> sent = new ArrayDeque<>();
+                for (int i = 0; i < depth; i++) {
+                    send(out, sent);
+                }
+                out.flush();
+                while (!sent.isEmpty()) {
+                    skipAnswer(in);
+                    long now = System.nanoTime();
+                    long sentAt = sent.poll();
+                    if (sentAt >= measureFrom) {
+                        if (count == latencies.length) {
+                            latencies = Arrays.copyOf(latencies, 2 * count);
+                        }
+                        latencies[count++] = now - sentAt;
+                    }
+                    if (now < end) {
+                        send(out, sent);
+                        out.flush();
+                    }
+                }
+            } catch (Exception e) {
+                failure = e;
+            }
+        }
+
+        private void send(OutputStream out, ArrayDeque<Long> sent) throws IOException {
+            out.write(requests[next]);
+            next = (next + 1) % requests.length;
+            sent.add(System.nanoTime());
+        }
+
+        // Reads up to and including the empty line ending an answer
+        private static void skipAnswer(InputStream in) throws IOException {
+            int prev = '\n';
+            while (true) {
+                int b = in.read();
+                if (b < 0) {
+                    throw new IOException("server closed the connection");
+                }
+                if (b == '\n' && prev == '\n') {
+                    return;
+                }
+                prev = b;
+            }
+        }
+    }
+}
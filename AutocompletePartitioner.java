@@ -0,0 +1,139 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Splits a dictionary by key range into partitions, each a dictionary of its
+ * own for one AutocompleteServer worker, so that no process has to hold the
+ * whole dictionary. A term belongs to the partition whose lower bound is
+ * the greatest one at most the term; bounds are one- or two-char strings
+ * chosen so the partitions hold about as many terms each.
+ *
+ * The partitioner holds the terms and weights of the dictionary, which is
+ * far less than the index a single server would build from it.
+ *
+ *  % java AutocompletePartitioner wiktionary.txt 4 parts
+ *
+ * writes parts/part-0.txt .. parts/part-3.txt, and parts/partitions.txt with
+ * the lower bound of each partition on one line, the first always empty.
+ * Pass partitions.txt to AutocompleteRouter.
+ */
+public class AutocompletePartitioner {
+    /**
+     * Partitions the dictionary in file into at most count partitions in
+     * directory dir. There are fewer when the terms have fewer distinct
+     * two-char starts.
+     *
+     * @param file - dictionary of a count line then weight\tterm lines
+     * @param count - number of partitions wanted, at least 1
+     * @param dir - directory to write to, created if missing
+     * @return lower bound of each partition
+     */
+    static String[] partition(String file, int count, File dir) throws IOException {
+        if (count <= 0) {
+            throw new IllegalArgumentException("count must be positive");
+        }
+
+        // Terms per two-char start
+        Autocomplete.Dictionary d = Autocomplete.load(file);
+        int N = d.terms.length;
+        TreeMap<String, Integer> starts = new TreeMap<>();
+        for (String term : d.terms) {
+            starts.merge(start(term), 1, Integer::sum);
+        }
+
+        // A new partition begins at the first start past each multiple of N / count
+        ArrayList<String> bounds = new ArrayList<>();
+        ArrayList<Integer> sizes = new ArrayList<>();
+        bounds.add("");
+        sizes.add(0);
+        long seen = 0;
+        for (Map.Entry<String, Integer> e : starts.entrySet()) {
+            int last = sizes.size() - 1;
+            if (bounds.size() < count && sizes.get(last) > 0
+                && seen >= (long) N * bounds.size() / count) {
+                bounds.add(e.getKey());
+                sizes.add(0);
+                last++;
+            }
+            sizes.set(last, sizes.get(last) + e.getValue());
+            seen += e.getValue();
+        }
+        String[] retVal = bounds.toArray(new String[0]);
+
+        // Write every term to its partition
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("cannot create " + dir);
+        }
+        Writer[] out = new Writer[retVal.length];
+        try {
+            for (int p = 0; p < retVal.length; p++) {
+                out[p] = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(new File(dir, "part-" + p + ".txt")), StandardCharsets.UTF_8));
+                out[p].write(sizes.get(p) + "\n");
+            }
+            for (int i = 0; i < N; i++) {
+                out[owner(retVal, d.terms[i])].write(weight(d.weights[i]) + "\t" + d.terms[i] + "\n");
+            }
+        } finally {
+            for (Writer w : out) {
+                if (w != null) {
+                    w.close();
+                }
+            }
+        }
+        try (Writer w = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(new File(dir, "partitions.txt")), StandardCharsets.UTF_8))) {
+            for (String bound : retVal) {
+                w.write(bound + "\n");
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * Partition owning term: the last whose lower bound is at most term.
+     *
+     * Runtime: O(log P) - P = number of partitions
+     */
+    static int owner(String[] bounds, String term) {
+        int lo = 0;
+        int hi = bounds.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (bounds[mid].compareTo(term) <= 0) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    // Weight as a dictionary writes it, without a fraction when it is whole
+    private static String weight(double w) {
+        return w == Math.rint(w) && Math.abs(w) < 1e15 ? Long.toString((long) w) : Double.toString(w);
+    }
+
+    // First two chars of term. A term sorts by its start first, so terms of
+    // one start stay in one partition.
+    private static String start(String term) {
+        return term.substring(0, Math.min(term.length(), 2));
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            System.out.println("usage: AutocompletePartitioner input.txt partitions outputDir");
+            System.exit(1);
+        }
+        String[] bounds = partition(args[0], Integer.parseInt(args[1]), new File(args[2]));
+        System.out.println("wrote " + bounds.length + " partitions to " + args[2]);
+    }
+}
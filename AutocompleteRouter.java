@@ -0,0 +1,277 @@
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Answers queries over a dictionary split by AutocompletePartitioner, with
+ * each partition served by an AutocompleteServer worker of its own. A prefix
+ * is sent only to the partitions whose key range can hold terms starting
+ * with it: one partition for most prefixes, several for a short prefix
+ * spanning a partition bound. The answers of several partitions are merged
+ * by weight, lower partition first on ties.
+ *
+ * Requests to every partition of a query are sent before any answer is
+ * read, so the workers search at the same time. Connections to workers are
+ * pooled and kept open; a worker that fails, closes, sends a malformed
+ * answer or does not connect or answer within the timeout surfaces as an
+ * UncheckedIOException and its connection is dropped. Served, the router's
+ * blocking round trips run on a pool of SERVING_THREADS threads rather than
+ * on the server's event loops.
+ *
+ *  % java AutocompletePartitioner wiktionary.txt 2 parts
+ *  % java AutocompleteServer parts/part-0.txt 7071 &
+ *  % java AutocompleteServer parts/part-1.txt 7072 &
+ *  % java AutocompleteRouter parts/partitions.txt 7070 localhost:7071 localhost:7072
+ *
+ * The router then serves the AutocompleteServer protocol on port 7070.
+ */
+public class AutocompleteRouter implements Closeable {
+    /** Milliseconds to wait for a worker to connect, and for each answer line */
+    static final int TIMEOUT = 5000;
+    /** Queries waiting on workers at once when served */
+    static final int SERVING_THREADS = 64;
+
+    private final int timeout;
+    private final String[] bounds;
+    private final InetSocketAddress[] workers;
+    private final List<ConcurrentLinkedQueue<WorkerConnection>> idle = new ArrayList<>();
+
+    /**
+     * @param bounds - lower bound of each partition, as AutocompletePartitioner wrote
+     * @param workers - address of the worker serving each partition
+     */
+    public AutocompleteRouter(String[] bounds, InetSocketAddress[] workers) {
+        this(bounds, workers, TIMEOUT);
+    }
+
+    /** Router giving up on a worker after timeout milliseconds */
+    AutocompleteRouter(String[] bounds, InetSocketAddress[] workers, int timeout) {
+        if (bounds == null || workers == null) {
+            throw new NullPointerException("router args are null");
+        }
+        if (bounds.length != workers.length || bounds.length == 0) {
+            throw new IllegalArgumentException("need one worker per partition");
+        }
+        if (!bounds[0].isEmpty()) {
+            throw new IllegalArgumentException("first partition must start at \"\"");
+        }
+        for (int p = 1; p < bounds.length; p++) {
+            if (bounds[p - 1].compareTo(bounds[p]) >= 0) {
+                throw new IllegalArgumentException("bounds are not increasing");
+            }
+        }
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("timeout must be positive");
+        }
+        this.timeout = timeout;
+        this.bounds = bounds.clone();
+        this.workers = workers.clone();
+        for (int p = 0; p < bounds.length; p++) {
+            idle.add(new ConcurrentLinkedQueue<>());
+        }
+    }
+
+    /** Number of partitions */
+    public int partitionCount() {
+        return bounds.length;
+    }
+
+    /**
+     * Returns the top k matching terms in descending order of weight.
+     *
+     * Runtime: O(kQ) plus one round trip - Q = partitions queried
+     * @param prefix - inputted prefix string
+     * @param k - number of matches to return
+     * @return top matching strings
+     */
+    public List<String> topMatches(String prefix, int k) {
+        List<String> retVal = new ArrayList<>();
+        for (Autocomplete.Match m : weightedMatches(prefix, k)) {
+            retVal.add(m.getTerm());
+        }
+        return retVal;
+    }
+
+    /** topMatches with each term's weight */
+    List<Autocomplete.Match> weightedMatches(String prefix, int k) {
+        // Invalid argument exceptions
+        if (prefix == null) {
+            throw new IllegalArgumentException("invalid prefix");
+        }
+        if (k < 0) {
+            throw new IllegalArgumentException("k is negative");
+        }
+        if (k == 0 || prefix.indexOf('\n') >= 0 || prefix.indexOf('\r') >= 0) {
+            // workers load terms a line each, so no term holds a line break,
+            // and the request line could not carry one to them
+            return new ArrayList<>();
+        }
+
+        // Partitions from, .., to hold every key starting with prefix: the
+        // owner of prefix itself, and each later one whose bound starts with it
+        int from = AutocompletePartitioner.owner(bounds, prefix);
+        int to = from;
+        while (to + 1 < bounds.length && bounds[to + 1].startsWith(prefix)) {
+            to++;
+        }
+
+        // Scatter, then gather in partition order
+        WorkerConnection[] conns = new WorkerConnection[to - from + 1];
+        List<List<Autocomplete.Match>> answers = new ArrayList<>();
+        try {
+            for (int p = from; p <= to; p++) {
+                conns[p - from] = connection(p);
+                conns[p - from].send(prefix, k);
+            }
+            for (WorkerConnection conn : conns) {
+                answers.add(conn.receive());
+            }
+        } catch (IOException | RuntimeException e) {
+            // a connection with requests in flight is unusable
+            for (WorkerConnection conn : conns) {
+                if (conn != null) {
+                    conn.close();
+                }
+            }
+            if (e instanceof IOException) {
+                throw new UncheckedIOException((IOException) e);
+            }
+            throw (RuntimeException) e;
+        }
+        for (int p = from; p <= to; p++) {
+            idle.get(p).add(conns[p - from]);
+        }
+        if (answers.size() == 1) {
+            return answers.get(0);
+        }
+
+        // Merge: each answer is sorted, and there are few of them
+        List<Autocomplete.Match> retVal = new ArrayList<>();
+        int[] next = new int[answers.size()];
+        while (retVal.size() < k) {
+            int best = -1;
+            for (int a = 0; a < answers.size(); a++) {
+                if (next[a] < answers.get(a).size() && (best < 0
+                    || answers.get(a).get(next[a]).getWeight() > answers.get(best).get(next[best]).getWeight())) {
+                    best = a;
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+            retVal.add(answers.get(best).get(next[best]++));
+        }
+        return retVal;
+    }
+
+    /** Closes the pooled worker connections */
+    @Override
+    public void close() {
+        for (ConcurrentLinkedQueue<WorkerConnection> pool : idle) {
+            WorkerConnection conn;
+            while ((conn = pool.poll()) != null) {
+                conn.close();
+            }
+        }
+    }
+
+    private WorkerConnection connection(int p) throws IOException {
+        WorkerConnection conn = idle.get(p).poll();
+        return conn != null ? conn : new WorkerConnection(workers[p], timeout);
+    }
+
+    /** A keep-alive connection to one worker */
+    private static final class WorkerConnection {
+        private final Socket socket;
+        private final OutputStream out;
+        private final BufferedReader in;
+
+        WorkerConnection(InetSocketAddress address, int timeout) throws IOException {
+            socket = new Socket();
+            try {
+                socket.connect(address, timeout);
+                socket.setSoTimeout(timeout);
+                socket.setTcpNoDelay(true);
+            } catch (IOException e) {
+                socket.close();
+                throw e;
+            }
+            out = new BufferedOutputStream(socket.getOutputStream());
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        }
+
+        void send(String prefix, int k) throws IOException {
+            out.write((k + "\t" + prefix + "\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        }
+
+        List<Autocomplete.Match> receive() throws IOException {
+            List<Autocomplete.Match> retVal = new ArrayList<>();
+            while (true) {
+                String line = in.readLine();
+                if (line == null) {
+                    throw new IOException("worker " + socket.getRemoteSocketAddress() + " closed");
+                }
+                if (line.isEmpty()) {
+                    return retVal;
+                }
+                if (line.startsWith("ERR")) {
+                    throw new IOException("worker " + socket.getRemoteSocketAddress() + ": " + line);
+                }
+                int tab = line.indexOf('\t');
+                double weight;
+                try {
+                    weight = tab < 0 ? Double.NaN : Double.parseDouble(line.substring(0, tab));
+                } catch (NumberFormatException e) {
+                    weight = Double.NaN;
+                }
+                if (Double.isNaN(weight)) {
+                    throw new IOException("worker " + socket.getRemoteSocketAddress()
+                                          + " sent a malformed line: " + line);
+                }
+                retVal.add(new Autocomplete.Match(line.substring(tab + 1), weight));
+            }
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // dropping it anyway
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.out.println("usage: AutocompleteRouter partitions.txt port host:port ...");
+            System.exit(1);
+        }
+        In in = new In(args[0]);
+        ArrayList<String> bounds = new ArrayList<>();
+        while (in.hasNextLine()) {
+            bounds.add(in.readLine());
+        }
+        InetSocketAddress[] workers = new InetSocketAddress[args.length - 2];
+        for (int i = 2; i < args.length; i++) {
+            int colon = args[i].lastIndexOf(':');
+            workers[i - 2] = new InetSocketAddress(args[i].substring(0, colon),
+                                                   Integer.parseInt(args[i].substring(colon + 1)));
+        }
+        AutocompleteRouter router = new AutocompleteRouter(bounds.toArray(new String[0]), workers);
+        AutocompleteServer server = new AutocompleteServer(router::weightedMatches,
+            Integer.parseInt(args[1]), Runtime.getRuntime().availableProcessors(), SERVING_THREADS);
+        server.start();
+        System.out.println("routing " + workers.length + " partitions on port " + server.getPort());
+    }
+}
@@ -0,0 +1,434 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BiFunction;
+
+/**
+ * Serves one loaded Autocomplete over TCP with a line protocol. Each request
+ * is one line, k and the prefix separated by a tab:
+ *
+ *  10\tsan fr
+ *
+ * and is answered by one "weight\tterm" line per match, best first, then an
+ * empty line. A malformed request gets a single "ERR message" line and the
+ * empty line instead. Text is UTF-8, and a trailing \r is ignored.
+ *
+ * Connections stay open for any number of requests, and a client may send
+ * requests without waiting for earlier answers: every complete line read is
+ * answered in order. Answers queue in a per-connection buffer, and once a
+ * client lets more than HIGH_WATER bytes of answers pile up the server
+ * stops reading its requests until the backlog drains, so a slow reader
+ * costs bounded memory rather than a growing queue.
+ *
+ * An acceptor thread deals connections round robin to a fixed set of event
+ * loops, each a non-blocking selector answering its connections' queries
+ * inline; Autocomplete queries take microseconds, so they need no separate
+ * worker pool. A source of matches that blocks, such as an
+ * AutocompleteRouter waiting on its workers, is instead given a pool of
+ * worker threads: each connection then has at most one request out on the
+ * pool, and its answer is handed back to the event loop to send, so a slow
+ * source never stalls the loop's other connections.
+ *
+ *  % java AutocompleteServer cities.txt 7070
+ *  % java AutocompleteServer cities.idx 7070 4
+ *
+ * @author
+ */
+public class AutocompleteServer implements Closeable {
+    /** Pending answer bytes above which a connection stops being read */
+    static final int HIGH_WATER = 256 * 1024;
+    /** Longest request line accepted, in bytes */
+    static final int MAX_LINE = 64 * 1024;
+    /** Largest k a request may ask for */
+    static final int MAX_K = 10000;
+
+    private final BiFunction<String, Integer, Iterable<Autocomplete.Match>> matches;
+    private final ServerSocketChannel server;
+    private final EventLoop[] loops;
+    private final ExecutorService workers;      // runs blocking sources, or null
+    private Thread[] threads;                   // event loop threads once started
+    private volatile boolean open = true;
+
+    /**
+     * Binds the server; start() begins accepting connections.
+     *
+     * @param autocomplete - dictionary to serve
+     * @param port - port to listen on, 0 for any free port
+     * @param threads - number of event loops, at least 1
+     */
+    public AutocompleteServer(Autocomplete autocomplete, int port, int threads) throws IOException {
+        this(weightedMatches(autocomplete), port, threads, 0);
+    }
+
+    /**
+     * Server answering from any source of matches, such as an
+     * AutocompleteRouter. A RuntimeException thrown by the source, such as
+     * the UncheckedIOException of a failed worker, is answered with an ERR
+     * line and leaves the connection open.
+     *
+     * @param matches - up to k matches of a prefix, best first
+     * @param workers - threads to call a blocking source on, 0 to call it
+     *                  inline on the event loops
+     */
+    AutocompleteServer(BiFunction<String, Integer, Iterable<Autocomplete.Match>> matches,
+                       int port, int threads, int workers) throws IOException {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads must be positive");
+        }
+        if (workers < 0) {
+            throw new IllegalArgumentException("workers is negative");
+        }
+        this.matches = matches;
+        this.workers = workers == 0 ? null : Executors.newFixedThreadPool(workers, r -> {
+            Thread t = new Thread(r, "autocomplete-worker");
+            t.setDaemon(true);
+            return t;
+        });
+        loops = new EventLoop[threads];
+        for (int i = 0; i < threads; i++) {
+            loops[i] = new EventLoop();
+        }
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(port));
+    }
+
+    private static BiFunction<String, Integer, Iterable<Autocomplete.Match>> weightedMatches(
+            Autocomplete autocomplete) {
+        if (autocomplete == null) {
+            throw new NullPointerException("autocomplete is null");
+        }
+        return autocomplete::weightedMatches;
+    }
+
+    /** Port the server is listening on */
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    /** Starts the acceptor and event loop threads */
+    public synchronized void start() {
+        threads = new Thread[loops.length];
+        for (int i = 0; i < loops.length; i++) {
+            threads[i] = new Thread(loops[i], "autocomplete-loop-" + i);
+            threads[i].start();
+        }
+        new Thread(this::accept, "autocomplete-acceptor").start();
+    }
+
+    /** Stops accepting and closes every connection before returning */
+    @Override
+    public synchronized void close() throws IOException {
+        open = false;
+        server.close();
+        for (EventLoop loop : loops) {
+            loop.selector.wakeup();
+        }
+        if (workers != null) {
+            workers.shutdownNow();
+        }
+        if (threads == null) {
+            return;
+        }
+        for (Thread t : threads) {
+            try {
+                if (t != Thread.currentThread()) {
+                    t.join();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void accept() {
+        int next = 0;
+        while (open) {
+            try {
+                SocketChannel ch = server.accept();
+                EventLoop loop = loops[next];
+                next = (next + 1) % loops.length;
+                loop.incoming.add(ch);
+                loop.selector.wakeup();
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                if (open) {
+                    System.err.println("accept failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /** One selector thread and the connections registered with it */
+    private final class EventLoop implements Runnable {
+        final Selector selector;
+        final ConcurrentLinkedQueue<SocketChannel> incoming = new ConcurrentLinkedQueue<>();
+        final ConcurrentLinkedQueue<Runnable> answered = new ConcurrentLinkedQueue<>();
+
+        EventLoop() throws IOException {
+            selector = Selector.open();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (open) {
+                    selector.select();
+                    SocketChannel ch;
+                    while ((ch = incoming.poll()) != null) {
+                        try {
+                            ch.configureBlocking(false);
+                            ch.socket().setTcpNoDelay(true);
+                            Connection c = new Connection(ch, this);
+                            c.key = ch.register(selector, SelectionKey.OP_READ, c);
+                        } catch (IOException e) {
+                            ch.close();
+                        }
+                    }
+                    // answers from the worker pool
+                    Runnable done;
+                    while ((done = answered.poll()) != null) {
+                        done.run();
+                    }
+                    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while (it.hasNext()) {
+                        SelectionKey key = it.next();
+                        it.remove();
+                        Connection c = (Connection) key.attachment();
+                        try {
+                            if (key.isValid() && key.isReadable()) {
+                                c.read(key);
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                c.write(key);
+                            }
+                        } catch (IOException e) {
+                            key.cancel();
+                            key.channel().close();
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("event loop failed: " + e.getMessage());
+            } finally {
+                for (SelectionKey key : selector.keys()) {
+                    try {
+                        key.channel().close();
+                    } catch (IOException ignored) {
+                        // closing anyway
+                    }
+                }
+                try {
+                    selector.close();
+                } catch (IOException ignored) {
+                    // closing anyway
+                }
+            }
+        }
+    }
+
+    /** Buffered requests and answers of one client */
+    private final class Connection {
+        private final SocketChannel ch;
+        private final EventLoop loop;
+        private SelectionKey key;
+        private ByteBuffer in = ByteBuffer.allocate(8192);     // unread requests
+        private ByteBuffer out = ByteBuffer.allocate(8192);    // unsent answers
+        private final StringBuilder answer = new StringBuilder();
+        private boolean eof;                                    // client done sending
+        private boolean pending;                                // a request is on the worker pool
+
+        Connection(SocketChannel ch, EventLoop loop) {
+            this.ch = ch;
+            this.loop = loop;
+        }
+
+        void read(SelectionKey key) throws IOException {
+            if (ch.read(in) < 0) {
+                eof = true;
+            }
+            flush(key);
+        }
+
+        void write(SelectionKey key) throws IOException {
+            flush(key);
+        }
+
+        // Answers complete request lines in order until the answer backlog
+        // reaches HIGH_WATER or a request goes to the worker pool; false if
+        // there was no line to answer
+        private boolean answer() {
+            in.flip();
+            byte[] bytes = in.array();
+            int start = in.position();
+            boolean answered = false;
+            for (int i = start; i < in.limit() && out.position() < HIGH_WATER && !pending; i++) {
+                if (bytes[i] == '\n') {
+                    int end = i > start && bytes[i - 1] == '\r' ? i - 1 : i;
+                    respond(new String(bytes, start, end - start, StandardCharsets.UTF_8));
+                    start = i + 1;
+                    answered = true;
+                }
+            }
+            in.position(start);
+            in.compact();
+            if (!in.hasRemaining() && out.position() < HIGH_WATER && !pending) {
+                // a full buffer holds no complete line
+                if (in.capacity() >= MAX_LINE) {
+                    in.clear();
+                    eof = true;
+                    answer.setLength(0);
+                    answer.append("ERR request longer than ").append(MAX_LINE).append(" bytes\n\n");
+                    append(answer);
+                    answered = true;
+                } else {
+                    ByteBuffer bigger = ByteBuffer.allocate(in.capacity() * 2);
+                    in.flip();
+                    bigger.put(in);
+                    in = bigger;
+                }
+            }
+            return answered;
+        }
+
+        private void respond(String line) {
+            answer.setLength(0);
+            int tab = line.indexOf('\t');
+            int k = -1;
+            if (tab > 0) {
+                try {
+                    k = Integer.parseInt(line.substring(0, tab).trim());
+                } catch (NumberFormatException e) {
+                    k = -1;
+                }
+            }
+            if (tab < 0) {
+                answer.append("ERR expected k<TAB>prefix\n");
+            } else if (k < 0 || k > MAX_K) {
+                answer.append("ERR k must be between 0 and ").append(MAX_K).append('\n');
+            } else if (workers == null) {
+                appendMatches(answer, line.substring(tab + 1), k);
+            } else {
+                String prefix = line.substring(tab + 1);
+                int count = k;
+                pending = true;
+                try {
+                    workers.execute(() -> {
+                        StringBuilder lines = new StringBuilder();
+                        appendMatches(lines, prefix, count);
+                        lines.append('\n');
+                        loop.answered.add(() -> complete(lines));
+                        loop.selector.wakeup();
+                    });
+                    return;
+                } catch (RejectedExecutionException e) {
+                    // closing
+                    pending = false;
+                    answer.append("ERR server is closing\n");
+                }
+            }
+            answer.append('\n');
+            append(answer);
+        }
+
+        // Sends the answer of the request that was on the worker pool, then
+        // goes on with the requests after it
+        private void complete(CharSequence lines) {
+            pending = false;
+            if (!key.isValid()) {
+                return;
+            }
+            append(lines);
+            try {
+                flush(key);
+            } catch (IOException e) {
+                key.cancel();
+                try {
+                    ch.close();
+                } catch (IOException ignored) {
+                    // closing anyway
+                }
+            }
+        }
+
+        private void append(CharSequence s) {
+            byte[] bytes = s.toString().getBytes(StandardCharsets.UTF_8);
+            if (out.remaining() < bytes.length) {
+                ByteBuffer bigger = ByteBuffer.allocate(
+                    Math.max(out.capacity() * 2, out.position() + bytes.length));
+                out.flip();
+                bigger.put(out);
+                out = bigger;
+            }
+            out.put(bytes);
+        }
+
+        // Sends pending answers, answering buffered requests whenever the
+        // backlog is under HIGH_WATER, and reads again only while it is;
+        // closes once the client is done and every request is answered and sent
+        private void flush(SelectionKey key) throws IOException {
+            do {
+                out.flip();
+                ch.write(out);
+                out.compact();
+            } while (out.position() < HIGH_WATER && answer());
+            if (eof && out.position() == 0 && !pending) {
+                key.cancel();
+                ch.close();
+                return;
+            }
+            int ops = 0;
+            if (out.position() > 0) {
+                ops |= SelectionKey.OP_WRITE;
+            }
+            if (!eof && out.position() < HIGH_WATER && !pending) {
+                ops |= SelectionKey.OP_READ;
+            }
+            key.interestOps(ops);
+        }
+    }
+
+    // Appends a "weight\tterm" line per match of prefix, or an ERR line if
+    // the source throws
+    private void appendMatches(StringBuilder answer, String prefix, int k) {
+        int from = answer.length();
+        try {
+            for (Autocomplete.Match m : matches.apply(prefix, k)) {
+                answer.append(m.getWeight()).append('\t').append(m.getTerm()).append('\n');
+            }
+        } catch (UncheckedIOException e) {
+            answer.setLength(from);
+            answer.append("ERR ").append(e.getCause().getMessage()).append('\n');
+        } catch (RuntimeException e) {
+            answer.setLength(from);
+            answer.append("ERR ").append(e.getMessage()).append('\n');
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2 && args.length != 3) {
+            System.out.println("usage: AutocompleteServer dictionary.txt|index.idx port [threads]");
+            System.exit(1);
+        }
+        Autocomplete autocomplete = Autocomplete.open(args[0]);
+        int threads = args.length == 3 ? Integer.parseInt(args[2])
+                                       : Runtime.getRuntime().availableProcessors();
+        AutocompleteServer server = new AutocompleteServer(autocomplete, Integer.parseInt(args[1]), threads);
+        server.start();
+        System.out.println("listening on port " + server.getPort() + " with " + threads + " threads");
+    }
+}
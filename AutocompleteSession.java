@@ -0,0 +1,215 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Incremental autocomplete for one text field. The session remembers the
+ * index node reached by every prefix of the current text, so typing a
+ * character costs one child lookup and backspace costs nothing, instead of
+ * walking the whole text from the root on every keystroke. Matches come back
+ * with their weights, so no weightOf walk per result is needed either.
+ *
+ * On a folded Autocomplete the session walks the fold of the text instead.
+ * While the text is ASCII the fold goes char by char, so typing still costs
+ * one child lookup; past that each edit refolds the text and steps only the
+ * part of the fold that changed.
+ *
+ * A session is meant for one user and is not thread-safe; any number of
+ * sessions may share one Autocomplete.
+ *
+ * @author
+ */
+public class AutocompleteSession {
+    private final TrieIndex index;
+    private final StringBuilder text = new StringBuilder();
+    // what is walked: text itself, or its fold on a folded index
+    private final StringBuilder key;
+    private boolean ascii = true;       // text has no chars past 0x7F
+    // nodes[i] is where the first i chars of key end, NONE once they leave
+    // the index; offsets[i] is how many of that node's tail chars they use
+    private int[] nodes = new int[16];
+    private int[] offsets = new int[16];
+
+    /**
+     * Starts a session with empty text.
+     *
+     * @param ac - dictionary to query
+     */
+    public AutocompleteSession(Autocomplete ac) {
+        if (ac == null) {
+            throw new NullPointerException("Autocomplete is null");
+        }
+        index = ac.index;
+        key = index.folded() ? new StringBuilder() : text;
+        nodes[0] = 0;
+        offsets[0] = 0;
+    }
+
+    /**
+     * Appends one character to the text.
+     *
+     * Runtime: O(log F) - F = number of children of the current node
+     * @param c - typed character
+     */
+    public void append(char c) {
+        if (key == text) {
+            step(c);
+            return;
+        }
+        text.append(c);
+        if (ascii && c < 0x80) {
+            step(TermFolder.fold(c));
+        } else {
+            refold();
+        }
+    }
+
+    // Walks one more char of key
+    private void step(char c) {
+        int depth = key.length();
+        int n = nodes[depth];
+        int off = offsets[depth];
+        int next = TrieIndex.NONE;
+        int nextOff = 0;
+        if (n != TrieIndex.NONE) {
+            if (off < index.tailLength(n)) {
+                // still inside n's edge
+                if (index.tailChar(n, off) == c) {
+                    next = n;
+                    nextOff = off + 1;
+                }
+            } else {
+                next = index.child(n, c);
+            }
+        }
+        if (depth + 1 == nodes.length) {
+            nodes = Arrays.copyOf(nodes, nodes.length * 2);
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        nodes[depth + 1] = next;
+        offsets[depth + 1] = nextOff;
+        key.append(c);
+    }
+
+    // Brings key up to the fold of text, stepping from where they part
+    private void refold() {
+        String folded = TermFolder.fold(text.toString());
+        int common = 0;
+        int max = Math.min(folded.length(), key.length());
+        while (common < max && folded.charAt(common) == key.charAt(common)) {
+            common++;
+        }
+        key.setLength(common);
+        for (int i = common; i < folded.length(); i++) {
+            step(folded.charAt(i));
+        }
+        ascii = true;
+        for (int i = 0; i < text.length() && ascii; i++) {
+            ascii = text.charAt(i) < 0x80;
+        }
+    }
+
+    /**
+     * Deletes the last character of the text, if any.
+     *
+     * Runtime: O(1)
+     * @return false if the text was already empty
+     */
+    public boolean backspace() {
+        if (text.length() == 0) {
+            return false;
+        }
+        text.setLength(text.length() - 1);
+        if (key != text) {
+            if (ascii) {
+                key.setLength(text.length());
+            } else {
+                refold();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Replaces the text, keeping the cursor for the prefix the old and new
+     * text share. Suits a text field that only reports its whole contents:
+     * typing or deleting at the end still costs one step per changed char.
+     *
+     * Runtime: O(M + D log F) - M = length of the shared prefix
+     *                           D = number of chars changed
+     * @param s - new text
+     */
+    public void setText(String s) {
+        if (s == null) {
+            throw new IllegalArgumentException("String is null.");
+        }
+        if (key != text) {
+            text.setLength(0);
+            text.append(s);
+            refold();
+            return;
+        }
+        int common = 0;
+        int max = Math.min(s.length(), text.length());
+        while (common < max && s.charAt(common) == text.charAt(common)) {
+            common++;
+        }
+        text.setLength(common);
+        for (int i = common; i < s.length(); i++) {
+            step(s.charAt(i));
+        }
+    }
+
+    /** Returns the current text */
+    public String getText() {
+        return text.toString();
+    }
+
+    /**
+     * Lazily yields the top k matches of the current text with their
+     * weights. The search advances only as results are read, so a caller
+     * can abandon a stale query between any two results. The iterable keeps
+     * the node of the text at the time of the call.
+     *
+     * Runtime: O(R log F) for R results read - F = size of the search fringe
+     * @param k - maximum number of matches
+     * @return matches of the current text
+     */
+    public Iterable<Autocomplete.Match> matches(int k) {
+        if (k < 0) {
+            throw new IllegalArgumentException("k is negative");
+        }
+        int n = nodes[key.length()];
+        if (n == TrieIndex.NONE || k == 0) {
+            return new ArrayList<>();
+        }
+        return index.weightedMatches(n, k);
+    }
+
+    /**
+     * Returns the top k matches of the current text, in descending order of
+     * weight, each with its weight.
+     *
+     * Runtime: O(K log F) - F = size of the search fringe
+     * @param k - number of matches to return
+     * @return matches of the current text
+     */
+    public List<Autocomplete.Match> topMatches(int k) {
+        if (k < 0) {
+            throw new IllegalArgumentException("k is negative");
+        }
+        List<Autocomplete.Match> retVal = new ArrayList<>();
+        int n = nodes[key.length()];
+        if (n == TrieIndex.NONE || k == 0) {
+            return retVal;
+        }
+        int len = Math.min(k, index.termCount());
+        String[] terms = new String[len];
+        double[] weights = new double[len];
+        int found = index.priorityDFS(n, terms, weights);
+        for (int i = 0; i < found; i++) {
+            retVal.add(new Autocomplete.Match(terms[i], weights[i]));
+        }
+        return retVal;
+    }
+}
@@ -0,0 +1,208 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Builds a path-compressed autocomplete Trie from parallel term/weight arrays
+ * on a fork-join pool. Terms are bucketed by first character; each bucket is
+ * sorted, validated (duplicates are adjacent once sorted, weights must not be
+ * negative) and inserted into its own subtree in one task. The subtrees are
+ * then hung off a shared root, whose maxPriority is the max over them.
+ *
+ * Buckets split on the first character only, so the build is only as
+ * parallel as the first characters are spread: a dictionary whose terms
+ * mostly share one first character is built mostly by one task.
+ *
+ * @author
+ */
+public class BulkTrieBuilder {
+    private final String[] keys;
+    private final String[] terms;
+    private final double[] weights;
+
+    /**
+     * @param terms Array of terms.
+     * @param weights Array of weights, same length as terms.
+     */
+    public BulkTrieBuilder(String[] terms, double[] weights) {
+        this(terms, terms, weights);
+    }
+
+    /**
+     * Builds a Trie whose paths spell keys but whose words return terms, as
+     * Trie.acInsertNew(key, term, weight) does. Duplicates are checked
+     * among keys.
+     *
+     * @param keys Array of keys, such as folded terms.
+     * @param terms Array of terms, same length as keys.
+     * @param weights Array of weights, same length as keys.
+     */
+    public BulkTrieBuilder(String[] keys, String[] terms, double[] weights) {
+        this.keys = keys;
+        this.terms = terms;
+        this.weights = weights;
+    }
+
+    /**
+     * Builds the Trie on the common fork-join pool.
+     *
+     * Runtime: O(MN log N / P) - M = max length of input string terms
+     *                            N = number of terms, P = number of cores
+     * @return path-compressed Trie holding every term
+     * @throws IllegalArgumentException on a null or duplicate term, or a
+     *         negative weight
+     */
+    public Trie build() {
+        return build(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Builds the Trie on the given pool.
+     */
+    public Trie build(ForkJoinPool pool) {
+        // Counting sort of term ids by first character; "" goes in bucket 0
+        int[] counts = new int[Character.MAX_VALUE + 2];
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] == null) {
+                throw new IllegalArgumentException("String is null.");
+            }
+            counts[bucket(keys[i]) + 1]++;
+        }
+        // counts[b] becomes the number of terms in buckets before b
+        for (int b = 1; b < counts.length; b++) {
+            counts[b] += counts[b - 1];
+        }
+        int[] starts = counts;
+        int[] ids = new int[keys.length];
+        int[] next = starts.clone();
+        for (int i = 0; i < keys.length; i++) {
+            ids[next[bucket(keys[i])]++] = i;
+        }
+
+        ArrayList<SubtreeTask> tasks = new ArrayList<>();
+        for (int b = 0; b < starts.length - 1; b++) {
+            if (starts[b] != starts[b + 1]) {
+                tasks.add(new SubtreeTask(ids, starts[b], starts[b + 1]));
+            }
+        }
+        invokeAll(pool, tasks);
+
+        // Merge the subtrees under one root
+        Trie AC = new Trie(true);
+        Trie.TrieNode root = AC.root;
+        for (SubtreeTask task : tasks) {
+            Trie sub = task.join();
+            Trie.TrieNode subRoot = sub.root;
+            if (subRoot.getMaxPriority() > root.getMaxPriority()) {
+                root.setMaxPriority(subRoot.getMaxPriority());
+            }
+            if (subRoot.getEndOfWord()) {
+                // the empty string's bucket is the root itself
+                root.changeEndOfWord();
+                root.setPriority2(subRoot.getPriority2());
+                root.setPrev(subRoot.getPrev());
+            }
+            for (int i = 0; i < subRoot.childCount(); i++) {
+                root.putChild(subRoot.labelAt(i), subRoot.childAt(i));
+            }
+        }
+        return AC;
+    }
+
+    /**
+     * Runs tasks on pool and waits for all of them. An IllegalArgumentException
+     * thrown by a task is rethrown as thrown, not as the copies fork-join
+     * wraps it in, one per join it crossed.
+     *
+     * @param pool - pool to run the tasks on
+     * @param tasks - tasks to run
+     */
+    static void invokeAll(ForkJoinPool pool, Collection<? extends ForkJoinTask<?>> tasks) {
+        try {
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(tasks);
+                }
+            });
+        } catch (IllegalArgumentException e) {
+            while (e.getCause() instanceof IllegalArgumentException) {
+                e = (IllegalArgumentException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    // Terms are bucketed by first char + 1 so "" sorts first
+    private static int bucket(String s) {
+        return s.isEmpty() ? 0 : s.charAt(0) + 1;
+    }
+
+    /** Sorts, validates and inserts one bucket of term ids into its own Trie */
+    @SuppressWarnings("serial")
+    private class SubtreeTask extends RecursiveTask<Trie> {
+        private final int[] ids;
+        private final int lo;
+        private final int hi;
+
+        SubtreeTask(int[] ids, int lo, int hi) {
+            this.ids = ids;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected Trie compute() {
+            sort(ids, lo, hi, new int[hi - lo]);
+            Trie sub = new Trie(true);
+            for (int i = lo; i < hi; i++) {
+                int id = ids[i];
+                // Check for duplicates - equal terms are next to each other
+                if (i > lo && keys[id].equals(keys[ids[i - 1]])) {
+                    throw new IllegalArgumentException("duplicate terms");
+                }
+                // Check for negative weights
+                if (weights[id] < 0) {
+                    throw new IllegalArgumentException("negative weight");
+                }
+                sub.acInsertNew(keys[id], terms[id], weights[id]);
+            }
+            return sub;
+        }
+
+        // Merge sort of ids[from, to) by key; tmp has room for to - from ids
+        private void sort(int[] a, int from, int to, int[] tmp) {
+            if (to - from < 16) {
+                for (int i = from + 1; i < to; i++) {
+                    int id = a[i];
+                    int j = i - 1;
+                    while (j >= from && keys[a[j]].compareTo(keys[id]) > 0) {
+                        a[j + 1] = a[j];
+                        j--;
+                    }
+                    a[j + 1] = id;
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            sort(a, from, mid, tmp);
+            sort(a, mid, to, tmp);
+            if (keys[a[mid - 1]].compareTo(keys[a[mid]]) <= 0) {
+                return;
+            }
+            System.arraycopy(a, from, tmp, 0, mid - from);
+            int i = 0;
+            int j = mid;
+            int k = from;
+            while (i < mid - from && j < to) {
+                a[k++] = keys[tmp[i]].compareTo(keys[a[j]]) <= 0 ? tmp[i++] : a[j++];
+            }
+            while (i < mid - from) {
+                a[k++] = tmp[i++];
+            }
+        }
+    }
+}
@@ -0,0 +1,279 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded result cache in front of an Autocomplete. topMatches results are
+ * kept per (prefix, k) in least recently used order, up to a fixed number of
+ * entries. Prefixes are cached by their index key, so on a folded
+ * Autocomplete "CAF" and "caf" share one entry. Updates made through this
+ * class drop every cached prefix of the changed term; updates made on the
+ * wrapped Autocomplete directly are not seen. The hot keys can be saved to
+ * a file and replayed at startup.
+ *
+ * Safe for concurrent use: the map is guarded by its own lock, and queries
+ * run outside it.
+ *
+ * @author
+ */
+public class CachedAutocomplete {
+    private final Autocomplete ac;
+    private final LinkedHashMap<Key, List<String>> cache;
+    // number of cached results per k, so invalidation can name each
+    // (prefix, k) key that may be cached; guarded by the cache lock
+    private final Map<Integer, Integer> ks = new HashMap<>();
+    // bumped by every update; a result computed across an update is not cached
+    private final AtomicLong epoch = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param ac - dictionary to cache
+     * @param capacity - maximum number of cached (prefix, k) results
+     */
+    public CachedAutocomplete(Autocomplete ac, int capacity) {
+        if (ac == null) {
+            throw new NullPointerException("Autocomplete is null");
+        }
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.ac = ac;
+        this.cache = new LinkedHashMap<Key, List<String>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, List<String>> eldest) {
+                if (size() > capacity) {
+                    forget(eldest.getKey().k);
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the top k matching terms, from the cache if present.
+     *
+     * Runtime: O(M) on a hit - M = length of prefix
+     * @param prefix - inputted prefix string
+     * @param k - number of matches to return
+     * @return unmodifiable list of top matching strings
+     */
+    public List<String> topMatches(String prefix, int k) {
+        if (prefix == null) {
+            throw new IllegalArgumentException("invalid prefix");
+        }
+        if (k < 0) {
+            throw new IllegalArgumentException("k is negative");
+        }
+        Key key = new Key(ac.key(prefix), k);
+        List<String> retVal;
+        synchronized (cache) {
+            retVal = cache.get(key);
+        }
+        if (retVal != null) {
+            hits.incrementAndGet();
+            return retVal;
+        }
+        misses.incrementAndGet();
+        return load(key);
+    }
+
+    /** Top match for prefix, served from the (prefix, 1) entry */
+    public String topMatch(String prefix) {
+        List<String> top = topMatches(prefix, 1);
+        return top.isEmpty() ? null : top.get(0);
+    }
+
+    /** Weight of term; never cached */
+    public double weightOf(String term) {
+        return ac.weightOf(term);
+    }
+
+    /**
+     * Autocomplete.updateWeight, then drops the cached results of every
+     * prefix of term.
+     *
+     * Runtime: O(M K) - M = length of term
+     *                   K = number of distinct k among cached results
+     */
+    public boolean updateWeight(String term, double weight) {
+        boolean retVal = ac.updateWeight(term, weight);
+        if (retVal) {
+            invalidate(term);
+        }
+        return retVal;
+    }
+
+    /** Autocomplete.remove, then drops the cached results of every prefix of term */
+    public boolean remove(String term) {
+        boolean retVal = ac.remove(term);
+        if (retVal) {
+            invalidate(term);
+        }
+        return retVal;
+    }
+
+    /**
+     * Drops the cached results of every prefix of term, for callers that
+     * changed the wrapped Autocomplete directly.
+     */
+    public void invalidate(String term) {
+        epoch.incrementAndGet();
+        String key = ac.key(term);
+        synchronized (cache) {
+            Integer[] cached = ks.keySet().toArray(new Integer[0]);
+            for (int i = 0; i <= key.length(); i++) {
+                String prefix = key.substring(0, i);
+                for (int k : cached) {
+                    if (cache.remove(new Key(prefix, k)) != null) {
+                        forget(k);
+                    }
+                }
+            }
+        }
+    }
+
+    /** Drops every cached result */
+    public void clear() {
+        epoch.incrementAndGet();
+        synchronized (cache) {
+            cache.clear();
+            ks.clear();
+        }
+    }
+
+    /** Number of topMatches calls answered from the cache */
+    public long hits() {
+        return hits.get();
+    }
+
+    /** Number of topMatches calls that had to query */
+    public long misses() {
+        return misses.get();
+    }
+
+    /** Number of cached results */
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    /** Number of distinct k among cached results */
+    int distinctKs() {
+        synchronized (cache) {
+            return ks.size();
+        }
+    }
+
+    /**
+     * Writes the cached keys, least recently used first, one "k TAB prefix"
+     * line each, for warm to replay after a restart.
+     *
+     * @param path - file to create or overwrite
+     */
+    public void saveHotKeys(String path) throws IOException {
+        List<Key> keys;
+        synchronized (cache) {
+            keys = new ArrayList<>(cache.keySet());
+        }
+        try (BufferedWriter out = Files.newBufferedWriter(Paths.get(path), StandardCharsets.UTF_8)) {
+            for (Key key : keys) {
+                out.write(key.k + "\t" + key.prefix);
+                out.newLine();
+            }
+        }
+    }
+
+    /**
+     * Loads the results of every key saved by saveHotKeys, in order, so the
+     * most recently used keys end up the least likely to be evicted. Does
+     * not count towards hits or misses.
+     *
+     * @param path - file written by saveHotKeys
+     * @return number of keys loaded
+     */
+    public int warm(String path) throws IOException {
+        int loaded = 0;
+        try (BufferedReader in = Files.newBufferedReader(Paths.get(path), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                int tab = line.indexOf('\t');
+                if (tab < 0) {
+                    throw new IOException("malformed hot key line: " + line);
+                }
+                int k;
+                try {
+                    k = Integer.parseInt(line.substring(0, tab));
+                } catch (NumberFormatException e) {
+                    throw new IOException("malformed hot key line: " + line, e);
+                }
+                if (k < 0) {
+                    throw new IOException("malformed hot key line: " + line);
+                }
+                load(new Key(ac.key(line.substring(tab + 1)), k));
+                loaded++;
+            }
+        }
+        return loaded;
+    }
+
+    // Queries key and caches the result unless an update ran meanwhile
+    private List<String> load(Key key) {
+        long seen = epoch.get();
+        ArrayList<String> terms = new ArrayList<>();
+        for (String term : ac.topMatches(key.prefix, key.k)) {
+            terms.add(term);
+        }
+        List<String> retVal = Collections.unmodifiableList(terms);
+        synchronized (cache) {
+            if (epoch.get() == seen && cache.put(key, retVal) == null) {
+                ks.merge(key.k, 1, Integer::sum);
+            }
+        }
+        return retVal;
+    }
+
+    // Counts one cached result of k fewer; the cache lock must be held
+    private void forget(int k) {
+        if (ks.merge(k, -1, Integer::sum) == 0) {
+            ks.remove(k);
+        }
+    }
+
+    /** Cache key: the index key of a prefix and the number of matches asked for */
+    private static final class Key {
+        final String prefix;
+        final int k;
+
+        Key(String prefix, int k) {
+            this.prefix = prefix;
+            this.k = k;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return k == other.k && prefix.equals(other.prefix);
+        }
+
+        @Override
+        public int hashCode() {
+            return prefix.hashCode() * 31 + k;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Sorts words by an alphabet permutation without holding them all in
+ * memory, for inputs larger than the heap. Words are read into chunks of
+ * at most a given number of bytes; each chunk is sorted, stripped of
+ * duplicates and written to a temporary file as a sorted run, and the runs
+ * are then merged, MAX_FAN_IN at a time, into the output. Input that fits
+ * in one chunk is sorted in memory and never touches the disk.
+ *
+ * Words with a char outside the alphabet are dropped, and each word is
+ * printed once, as AlphabetSort does.
+ *
+ * @author
+ */
+public class ExternalAlphabetSort {
+    /** Most runs merged at once; more take several merge passes */
+    static final int MAX_FAN_IN = 128;
+    // Estimated heap bytes of a String beyond its chars, plus its array slot
+    private static final int WORD_OVERHEAD = 64;
+
+    private final int[] rank = new int[Character.MAX_VALUE + 1];
+    private final Comparator<String> order;
+    private final long memory;
+    private final File tmpDir;
+    private int runs;
+
+    /**
+     * @param alphabet - every char allowed in a word, in sort order
+     * @param memory - bytes of words to hold in memory at once
+     * @param tmpDir - directory for sorted runs, null for the system default
+     */
+    public ExternalAlphabetSort(String alphabet, long memory, File tmpDir) {
+        if (alphabet == null) {
+            throw new NullPointerException("alphabet is null");
+        }
+        if (memory <= 0) {
+            throw new IllegalArgumentException("memory must be positive");
+        }
+        Arrays.fill(rank, -1);
+        for (int i = 0; i < alphabet.length(); i++) {
+            char c = alphabet.charAt(i);
+            if (rank[c] >= 0) {
+                throw new IllegalArgumentException("letter appears multiple times");
+            }
+            rank[c] = i;
+        }
+        this.memory = memory;
+        this.tmpDir = tmpDir;
+        order = this::compare;
+    }
+
+    /**
+     * Writes the words of in, one per line, to out in alphabet order.
+     *
+     * Runtime: O(L log N) - L = total length of the words
+     *                       N = number of words
+     * @param in - words to sort, after the alphabet line
+     * @param out - where sorted words go; flushed before returning
+     * @return number of lines read, words outside the alphabet included
+     */
+    public long sort(LineReader in, AlphabetSort.LineWriter out) throws IOException {
+        List<File> files = new ArrayList<>();
+        long lines = 0;
+        try {
+            ArrayList<String> chunk = new ArrayList<>();
+            long bytes = 0;
+            for (String word = in.readLine(); word != null; word = in.readLine()) {
+                lines++;
+                if (word.isEmpty()) {
+                    throw new IllegalArgumentException("String is empty.");
+                }
+                if (!inAlphabet(word)) {
+                    continue;
+                }
+                chunk.add(word);
+                bytes += WORD_OVERHEAD + 2L * word.length();
+                if (bytes >= memory) {
+                    files.add(spill(chunk));
+                    chunk.clear();
+                    bytes = 0;
+                }
+            }
+            if (files.isEmpty()) {
+                // fits in memory
+                writeSorted(chunk, out);
+                out.flush();
+                return lines;
+            }
+            if (!chunk.isEmpty()) {
+                files.add(spill(chunk));
+            }
+            chunk = null;
+
+            // merge MAX_FAN_IN runs into one until a last merge can write out
+            while (files.size() > MAX_FAN_IN) {
+                List<File> merged = new ArrayList<>();
+                for (int i = 0; i < files.size(); i += MAX_FAN_IN) {
+                    List<File> group = files.subList(i, Math.min(i + MAX_FAN_IN, files.size()));
+                    if (group.size() == 1) {
+                        merged.add(group.get(0));
+                        continue;
+                    }
+                    File run = newRun();
+                    merged.add(run);
+                    try (OutputStream os = new FileOutputStream(run)) {
+                        AlphabetSort.LineWriter w = new AlphabetSort.LineWriter(os);
+                        merge(group, w);
+                        w.flush();
+                    }
+                    for (File f : group) {
+                        f.delete();
+                    }
+                }
+                files = merged;
+            }
+            merge(files, out);
+            out.flush();
+            return lines;
+        } finally {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+    }
+
+    /** Number of sorted runs written to disk so far, merged runs included */
+    int runCount() {
+        return runs;
+    }
+
+    /**
+     * Compares by alphabet rank char by char, a word before its extensions.
+     * Both words must be in the alphabet.
+     */
+    int compare(String a, String b) {
+        int len = Math.min(a.length(), b.length());
+        for (int i = 0; i < len; i++) {
+            int diff = rank[a.charAt(i)] - rank[b.charAt(i)];
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return a.length() - b.length();
+    }
+
+    private boolean inAlphabet(String word) {
+        for (int i = 0; i < word.length(); i++) {
+            if (rank[word.charAt(i)] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Sorts chunk and writes each distinct word once
+    private void writeSorted(ArrayList<String> chunk, AlphabetSort.LineWriter out) {
+        String[] words = chunk.toArray(new String[0]);
+        Arrays.sort(words, order);
+        for (int i = 0; i < words.length; i++) {
+            if (i == 0 || !words[i].equals(words[i - 1])) {
+                out.writeLine(words[i]);
+            }
+        }
+    }
+
+    // Writes chunk to a new sorted run
+    private File spill(ArrayList<String> chunk) throws IOException {
+        File run = newRun();
+        try (OutputStream os = new FileOutputStream(run)) {
+            AlphabetSort.LineWriter w = new AlphabetSort.LineWriter(os);
+            writeSorted(chunk, w);
+            w.flush();
+        }
+        return run;
+    }
+
+    private File newRun() throws IOException {
+        runs++;
+        File run = File.createTempFile("alphabetsort", ".run", tmpDir);
+        run.deleteOnExit();
+        return run;
+    }
+
+    // k-way merge of sorted runs, each distinct word once
+    private void merge(List<File> files, AlphabetSort.LineWriter out) throws IOException {
+        List<Cursor> cursors = new ArrayList<>();
+        try {
+            PriorityQueue<Cursor> heads = new PriorityQueue<>((x, y) -> {
+                int cmp = compare(x.word, y.word);
+                return cmp != 0 ? cmp : x.run - y.run;
+            });
+            for (int r = 0; r < files.size(); r++) {
+                Cursor cursor = new Cursor(r, new LineReader(new FileInputStream(files.get(r))));
+                cursors.add(cursor);
+                if (cursor.advance()) {
+                    heads.add(cursor);
+                }
+            }
+            String last = null;
+            while (!heads.isEmpty()) {
+                Cursor cursor = heads.poll();
+                if (last == null || !cursor.word.equals(last)) {
+                    out.writeLine(cursor.word);
+                    last = cursor.word;
+                }
+                if (cursor.advance()) {
+                    heads.add(cursor);
+                }
+            }
+        } finally {
+            for (Cursor cursor : cursors) {
+                cursor.reader.close();
+            }
+        }
+    }
+
+    /** One run being merged, with its next word */
+    private static final class Cursor {
+        final int run;
+        final LineReader reader;
+        String word;
+
+        Cursor(int run, LineReader reader) {
+            this.run = run;
+            this.reader = reader;
+        }
+
+        /** Moves to the next word, false once the run is done */
+        boolean advance() throws IOException {
+            word = reader.readLine();
+            return word != null;
+        }
+    }
+}
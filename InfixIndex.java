@@ -0,0 +1,291 @@
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Matches words from the middle of terms. Every token start of every term (the
+ * first char, and each letter or digit that follows a char that is neither)
+ * is one entry of a suffix array sorted by the text from that position on,
+ * so the entries starting with a query string form one contiguous range. A
+ * segment tree over the entries holds the argmax weight of every range,
+ * which lets top-k retrieval pop ranges best-first and split them around
+ * their best entry instead of scanning the whole range.
+ *
+ * Term ids are those of the TrieIndex the weights came from. setWeight
+ * rewrites weights and tree under a StampedLock write lock; queries take no
+ * lock, running as optimistic reads of it and retrying under its read lock
+ * only if a setWeight overlapped them, as TrieIndex queries do.
+ *
+ * @author
+ */
+public class InfixIndex {
+    private final String[] keys;        // text matched, by term id
+    private final String[] terms;       // text returned, by term id
+    private final double[] weights;     // by term id, NEGATIVE_INFINITY once removed
+    private final int[] entryTerm;      // term of each entry, in suffix order
+    private final int[] entryStart;     // offset of each entry's suffix in its term
+    private final int[] firstEntry;     // positions of term i's entries are
+    private final int[] entryPos;       // entryPos[firstEntry[i]..firstEntry[i + 1] - 1]
+    private final int[] tree;           // tree[size + e] = e, inner nodes hold argmax
+    private final int size;
+    private final StampedLock lock = new StampedLock();
+
+    /**
+     * Runtime: O(T log T) - T = number of token starts in keys
+     * @param keys - text to match by term id, such as folded terms
+     * @param terms - terms by term id, may be keys itself
+     * @param weights - weight of each term, NEGATIVE_INFINITY if removed
+     */
+    InfixIndex(String[] keys, String[] terms, double[] weights) {
+        this.keys = keys;
+        this.terms = terms;
+        this.weights = weights;
+        firstEntry = new int[keys.length + 1];
+        for (int i = 0; i < keys.length; i++) {
+            firstEntry[i + 1] = firstEntry[i] + tokenStarts(keys[i]);
+        }
+        size = firstEntry[keys.length];
+        int[] termOf = new int[size];
+        int[] startOf = new int[size];
+        int e = 0;
+        for (int i = 0; i < keys.length; i++) {
+            String s = keys[i];
+            for (int j = 0; j < Math.max(s.length(), 1); j++) {
+                if (isTokenStart(s, j)) {
+                    termOf[e] = i;
+                    startOf[e++] = j;
+                }
+            }
+        }
+
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        sort(order, termOf, startOf, 0, size, new int[size]);
+        entryTerm = new int[size];
+        entryStart = new int[size];
+        entryPos = new int[size];
+        for (int i = 0; i < size; i++) {
+            entryTerm[i] = termOf[order[i]];
+            entryStart[i] = startOf[order[i]];
+            // entries were numbered term by term, so term j's are
+            // firstEntry[j]..firstEntry[j + 1] - 1 before sorting
+            entryPos[order[i]] = i;
+        }
+
+        tree = new int[2 * size];
+        for (int i = 0; i < size; i++) {
+            tree[size + i] = i;
+        }
+        for (int i = size - 1; i > 0; i--) {
+            tree[i] = better(tree[2 * i], tree[2 * i + 1]);
+        }
+    }
+
+    /**
+     * Returns up to k terms with a token starting with s, ordered by highest
+     * weight. A term matching at several token starts is returned once.
+     *
+     * Runtime: O(|s| log T + R log R) - T = number of token starts
+     *                                   R = matching entries visited, k plus
+     *                                       repeats of terms already found
+     * @param s - start of a word anywhere in the term
+     * @param k - number of terms to look for
+     */
+    String[] topTerms(String s, int k) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                String[] retVal = search(s, k);
+                if (lock.validate(stamp)) {
+                    return retVal;
+                }
+            } catch (RuntimeException e) {
+                // a torn read may send the search out of bounds
+                if (lock.validate(stamp)) {
+                    throw e;
+                }
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return search(s, k);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // topTerms itself, run under whichever read topTerms is holding
+    private String[] search(String s, int k) {
+        int lo = bound(s, false);
+        int hi = bound(s, true);
+        ArrayList<String> retVal = new ArrayList<>();
+        HashSet<Integer> found = new HashSet<>();
+        // ranges {from, to, argmax} ordered as better orders entries
+        PriorityQueue<int[]> ranges = new PriorityQueue<>(
+            (a, b) -> a[2] == b[2] ? 0 : better(a[2], b[2]) == a[2] ? -1 : 1);
+        if (lo < hi) {
+            ranges.add(new int[] {lo, hi, argmax(lo, hi)});
+        }
+        while (retVal.size() < k && !ranges.isEmpty()) {
+            int[] range = ranges.poll();
+            int best = range[2];
+            if (weights[entryTerm[best]] == Double.NEGATIVE_INFINITY) {
+                // the rest of the fringe was removed too
+                break;
+            }
+            if (found.add(entryTerm[best])) {
+                retVal.add(terms[entryTerm[best]]);
+            }
+            if (range[0] < best) {
+                ranges.add(new int[] {range[0], best, argmax(range[0], best)});
+            }
+            if (best + 1 < range[1]) {
+                ranges.add(new int[] {best + 1, range[1], argmax(best + 1, range[1])});
+            }
+        }
+        return retVal.toArray(new String[0]);
+    }
+
+    /**
+     * Sets the weight of term id, NEGATIVE_INFINITY to drop it from results.
+     *
+     * Runtime: O(E log T) - E = number of token starts in the term
+     */
+    void setWeight(int id, double w) {
+        long stamp = lock.writeLock();
+        try {
+            weights[id] = w;
+            for (int i = firstEntry[id]; i < firstEntry[id + 1]; i++) {
+                for (int n = (size + entryPos[i]) >>> 1; n > 0; n >>>= 1) {
+                    tree[n] = better(tree[2 * n], tree[2 * n + 1]);
+                }
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /** Number of token starts indexed */
+    int size() {
+        return size;
+    }
+
+    // First entry whose suffix is at least s, or with after, the first whose
+    // suffix neither starts with s nor sorts before it
+    private int bound(String s, boolean after) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compareStart(mid, s);
+            if (cmp < 0 || (after && cmp == 0)) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // Compares the first s.length() chars of entry e's suffix with s
+    private int compareStart(int e, String s) {
+        String t = keys[entryTerm[e]];
+        int off = entryStart[e];
+        int len = Math.min(t.length() - off, s.length());
+        for (int i = 0; i < len; i++) {
+            int diff = t.charAt(off + i) - s.charAt(i);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return len == s.length() ? 0 : -1;
+    }
+
+    // Entry of highest weight among entries [from, to), lowest on ties
+    private int argmax(int from, int to) {
+        int best = tree[size + from];
+        for (int l = from + size, r = to + size; l < r; l >>>= 1, r >>>= 1) {
+            if ((l & 1) == 1) {
+                best = better(best, tree[l++]);
+            }
+            if ((r & 1) == 1) {
+                best = better(best, tree[--r]);
+            }
+        }
+        return best;
+    }
+
+    private int better(int a, int b) {
+        double wa = weights[entryTerm[a]];
+        double wb = weights[entryTerm[b]];
+        if (wa != wb) {
+            return wa > wb ? a : b;
+        }
+        return a < b ? a : b;
+    }
+
+    private static int tokenStarts(String s) {
+        int count = 0;
+        for (int j = 0; j < Math.max(s.length(), 1); j++) {
+            if (isTokenStart(s, j)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // Position 0 always starts a token, so "" gets one entry too
+    private static boolean isTokenStart(String s, int j) {
+        return j == 0 || (Character.isLetterOrDigit(s.charAt(j))
+                          && !Character.isLetterOrDigit(s.charAt(j - 1)));
+    }
+
+    // Merge sort of entry ids a[from, to) by suffix; tmp has room for to - from ids
+    private void sort(int[] a, int[] termOf, int[] startOf, int from, int to, int[] tmp) {
+        if (to - from < 16) {
+            for (int i = from + 1; i < to; i++) {
+                int id = a[i];
+                int j = i - 1;
+                while (j >= from && compare(termOf, startOf, a[j], id) > 0) {
+                    a[j + 1] = a[j];
+                    j--;
+                }
+                a[j + 1] = id;
+            }
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        sort(a, termOf, startOf, from, mid, tmp);
+        sort(a, termOf, startOf, mid, to, tmp);
+        if (compare(termOf, startOf, a[mid - 1], a[mid]) <= 0) {
+            return;
+        }
+        System.arraycopy(a, from, tmp, 0, mid - from);
+        int i = 0;
+        int j = mid;
+        int k = from;
+        while (i < mid - from && j < to) {
+            a[k++] = compare(termOf, startOf, tmp[i], a[j]) <= 0 ? tmp[i++] : a[j++];
+        }
+        while (i < mid - from) {
+            a[k++] = tmp[i++];
+        }
+    }
+
+    private int compare(int[] termOf, int[] startOf, int x, int y) {
+        String s = keys[termOf[x]];
+        String t = keys[termOf[y]];
+        int i = startOf[x];
+        int j = startOf[y];
+        while (i < s.length() && j < t.length()) {
+            int diff = s.charAt(i++) - t.charAt(j++);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return (s.length() - i) - (t.length() - j);
+    }
+}
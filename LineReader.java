@@ -0,0 +1,159 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads UTF-8 lines straight from bytes in a large buffer, refilled either
+ * from a stream or by bulk copies out of a file mapped into memory a window
+ * at a time, so a file is read at close to disk speed without the
+ * per-token regex matching of Scanner or a read call per refill. Lines end
+ * at \n, with a \r before it dropped; a last line need not end with \n.
+ *
+ * @author
+ */
+public class LineReader implements Closeable {
+    private static final int BUFFER = 1 << 16;
+    private static final long WINDOW = 1L << 28;
+
+    private final InputStream in;       // stream source, or null
+    private final FileChannel file;     // mapped source, or null
+    private final long mapSize;         // bytes mapped at a time
+    private ByteBuffer mapped;          // mapped bytes not yet copied to window
+    private long mapEnd;                // file offset just past mapped
+    private ByteBuffer window;          // bytes [position, limit) are unread
+    private boolean eof;
+
+    /** Reads lines from a stream */
+    public LineReader(InputStream in) {
+        if (in == null) {
+            throw new NullPointerException("stream is null");
+        }
+        this.in = in;
+        this.file = null;
+        mapSize = 0;
+        window = ByteBuffer.allocate(BUFFER);
+        window.flip();
+    }
+
+    /** Reads lines from a file, mapping it into memory */
+    public LineReader(String path) throws IOException {
+        this(path, WINDOW);
+    }
+
+    /** Reads lines from a file, mapping mapSize bytes at a time */
+    LineReader(String path, long mapSize) throws IOException {
+        this.in = null;
+        this.file = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+        this.mapSize = mapSize;
+        mapped = ByteBuffer.allocate(0);
+        window = ByteBuffer.allocate(BUFFER);
+        window.flip();
+    }
+
+    /**
+     * Returns the next line without its line ending, or null at the end of
+     * the input.
+     *
+     * Runtime: O(N) - N = length of the line
+     */
+    public String readLine() throws IOException {
+        int from = window.position();
+        int i = from;
+        while (true) {
+            byte[] buf = window.array();
+            int limit = window.limit();
+            while (i < limit && buf[i] != '\n') {
+                i++;
+            }
+            if (i < limit) {
+                String retVal = decode(i);
+                window.position(i + 1);
+                return retVal;
+            }
+            // no line end in the window: refill and rescan only the new bytes
+            int scanned = i - from;
+            if (!refill()) {
+                if (window.hasRemaining()) {
+                    return decode(window.limit());
+                }
+                return null;
+            }
+            from = window.position();
+            i = from + scanned;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (in != null) {
+            in.close();
+        } else {
+            file.close();
+        }
+    }
+
+    // Line of the unread bytes up to to, dropping a \r before the \n;
+    // moves past them
+    private String decode(int to) {
+        int from = window.position();
+        byte[] buf = window.array();
+        int len = to > from && buf[to - 1] == '\r' ? to - from - 1 : to - from;
+        window.position(to);
+        return new String(buf, from, len, StandardCharsets.UTF_8);
+    }
+
+    // Keeps the unread bytes and adds more after them; false if there are no
+    // more
+    private boolean refill() throws IOException {
+        if (eof) {
+            return false;
+        }
+        window.compact();
+        if (!window.hasRemaining()) {
+            // one line fills the buffer
+            ByteBuffer bigger = ByteBuffer.allocate(window.capacity() * 2);
+            window.flip();
+            bigger.put(window);
+            window = bigger;
+        }
+        int n;
+        if (in != null) {
+            n = in.read(window.array(), window.position(), window.remaining());
+            if (n > 0) {
+                window.position(window.position() + n);
+            }
+        } else {
+            n = copyMapped();
+        }
+        if (n < 0) {
+            eof = true;
+        }
+        window.flip();
+        return n >= 0;
+    }
+
+    // Copies mapped bytes into the window, mapping the next part of the file
+    // once the current one is used up; -1 at the end of the file
+    private int copyMapped() throws IOException {
+        if (!mapped.hasRemaining()) {
+            long size = file.size();
+            if (mapEnd >= size) {
+                return -1;
+            }
+            long len = Math.min(size - mapEnd, mapSize);
+            mapped = file.map(FileChannel.MapMode.READ_ONLY, mapEnd, len);
+            mapEnd += len;
+        }
+        int n = Math.min(mapped.remaining(), window.remaining());
+        int limit = mapped.limit();
+        mapped.limit(mapped.position() + n);
+        window.put(mapped);
+        mapped.limit(limit);
+        return n;
+    }
+}
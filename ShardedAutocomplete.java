@@ -0,0 +1,351 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Autocomplete over a dictionary split by term hash into independent
+ * shards, each its own Autocomplete with its own index arrays. Shards are
+ * built in parallel, and a query is scattered to every shard on a fork-join
+ * pool, the common pool unless one is given, and the shards' answers merged
+ * with a k-way heap.
+ *
+ * Every shard streams its matches in descending order of weight and
+ * publishes each weight to a shared bound holding the k best weights seen
+ * by any shard. A shard stops as soon as its next match falls below the
+ * k-th best of that bound: that match, and everything after it, can no
+ * longer make the top k. Since the bound only ever holds real matches it
+ * never exceeds the true k-th best, so the merged result is exact. With no
+ * spare cores to scatter to, the heap instead pulls each shard's stream
+ * lazily, so no shard reads past what the top k needs.
+ *
+ * Thread safety as for Autocomplete. Terms of equal weight from different
+ * shards come back in shard order rather than in the single-index order.
+ *
+ * @author
+ */
+public class ShardedAutocomplete {
+    private final Autocomplete[] shards;
+    private final ForkJoinPool pool;
+
+    /**
+     * Splits terms into the given number of shards and builds them in
+     * parallel.
+     *
+     * Runtime: O(MN / P) - M = max length of input string terms
+     *                      N = number of terms, P = number of cores
+     * @param terms Array of terms.
+     * @param weights Array of weights.
+     * @param shards number of shards, at least 1
+     */
+    public ShardedAutocomplete(String[] terms, double[] weights, int shards) {
+        this(terms, weights, shards, false);
+    }
+
+    /**
+     * ShardedAutocomplete whose shards match case- and accent-insensitively
+     * when fold is true, as Autocomplete(terms, weights, fold) does.
+     */
+    public ShardedAutocomplete(String[] terms, double[] weights, int shards, boolean fold) {
+        this(terms, weights, shards, fold, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * ShardedAutocomplete that builds and queries its shards on pool instead
+     * of the common pool.
+     */
+    ShardedAutocomplete(String[] terms, double[] weights, int shards, boolean fold, ForkJoinPool pool) {
+        // Invalid argument exceptions
+        if (terms == null || weights == null || pool == null) {
+            throw new NullPointerException("AC args are null");
+        }
+        if (terms.length != weights.length) {
+            throw new IllegalArgumentException("term and array lengths are different");
+        }
+        if (shards <= 0) {
+            throw new IllegalArgumentException("shards must be positive");
+        }
+
+        // Counting sort of term ids by shard; duplicates share a shard, whose
+        // constructor rejects them
+        int[] starts = new int[shards + 1];
+        for (String term : terms) {
+            if (term == null) {
+                throw new IllegalArgumentException("String is null.");
+            }
+            starts[shard(term, shards) + 1]++;
+        }
+        for (int s = 0; s < shards; s++) {
+            starts[s + 1] += starts[s];
+        }
+        String[][] shardTerms = new String[shards][];
+        double[][] shardWeights = new double[shards][];
+        for (int s = 0; s < shards; s++) {
+            shardTerms[s] = new String[starts[s + 1] - starts[s]];
+            shardWeights[s] = new double[shardTerms[s].length];
+        }
+        int[] next = new int[shards];
+        for (int i = 0; i < terms.length; i++) {
+            int s = shard(terms[i], shards);
+            shardTerms[s][next[s]] = terms[i];
+            shardWeights[s][next[s]++] = weights[i];
+        }
+
+        this.pool = pool;
+        this.shards = new Autocomplete[shards];
+        ArrayList<RecursiveAction> builds = new ArrayList<>();
+        for (int s = 0; s < shards; s++) {
+            int id = s;
+            builds.add(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    ShardedAutocomplete.this.shards[id] =
+                        new Autocomplete(shardTerms[id], shardWeights[id], fold);
+                }
+            });
+        }
+        BulkTrieBuilder.invokeAll(pool, builds);
+    }
+
+    /** Number of shards */
+    public int shardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Find the weight of a given term. If it is not in the dictionary, return 0.0
+     *
+     * Runtime: O(N) - N = length of string
+     */
+    public double weightOf(String term) {
+        if (term == null) {
+            return 0.0;
+        }
+        return shards[shard(term, shards.length)].weightOf(term);
+    }
+
+    /** Autocomplete.updateWeight on the shard holding term */
+    public boolean updateWeight(String term, double weight) {
+        if (term == null) {
+            throw new IllegalArgumentException("String is null.");
+        }
+        return shards[shard(term, shards.length)].updateWeight(term, weight);
+    }
+
+    /** Autocomplete.remove on the shard holding term */
+    public boolean remove(String term) {
+        if (term == null) {
+            throw new IllegalArgumentException("String is null.");
+        }
+        return shards[shard(term, shards.length)].remove(term);
+    }
+
+    /**
+     * Return the top match for given prefix, or null if there is no matching term.
+     */
+    public String topMatch(String prefix) {
+        if (prefix == null) {
+            throw new NullPointerException("topMatch prefix is null");
+        }
+        List<String> top = topMatches(prefix, 1);
+        return top.isEmpty() ? null : top.get(0);
+    }
+
+    /**
+     * Returns the top k matching terms in descending order of weight. Each
+     * shard searches in parallel until its next match drops below the k-th
+     * best weight any shard has found so far; the shards' lists are then
+     * merged.
+     *
+     * Runtime: O(S (M + k log F) / P + k log S) - S = number of shards
+     *                                             M = length of prefix
+     *                                             F = size of a shard's fringe
+     *                                             P = number of cores
+     * @param prefix - inputted prefix string
+     * @param k - number of matches to return
+     * @return top matching strings
+     */
+    public List<String> topMatches(String prefix, int k) {
+        // Invalid argument exceptions
+        if (prefix == null) {
+            throw new IllegalArgumentException("invalid prefix");
+        }
+        if (k < 0) {
+            throw new IllegalArgumentException("k is negative");
+        }
+        List<String> retVal = new ArrayList<>();
+        if (k == 0) {
+            return retVal;
+        }
+        if (shards.length == 1 || pool.getParallelism() < 2) {
+            return mergeLazily(prefix, k);
+        }
+
+        // Scatter
+        Bound bound = new Bound(k);
+        ArrayList<ShardQuery> queries = new ArrayList<>();
+        for (Autocomplete shard : shards) {
+            queries.add(new ShardQuery(shard, prefix, k, bound));
+        }
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(queries);
+            }
+        });
+
+        // Gather: k-way merge on each shard's next weight, lower shard first
+        // on ties
+        PriorityQueue<int[]> heads = new PriorityQueue<>((a, b) -> {
+            double wa = queries.get(a[0]).found.get(a[1]).getWeight();
+            double wb = queries.get(b[0]).found.get(b[1]).getWeight();
+            return wa != wb ? Double.compare(wb, wa) : Integer.compare(a[0], b[0]);
+        });
+        for (int s = 0; s < queries.size(); s++) {
+            if (!queries.get(s).found.isEmpty()) {
+                heads.add(new int[] {s, 0});
+            }
+        }
+        while (retVal.size() < k && !heads.isEmpty()) {
+            int[] head = heads.poll();
+            List<Autocomplete.Match> found = queries.get(head[0]).found;
+            retVal.add(found.get(head[1]).getTerm());
+            if (++head[1] < found.size()) {
+                heads.add(head);
+            }
+        }
+        return retVal;
+    }
+
+    // k-way merge pulling from whichever shard's next match is best
+    private List<String> mergeLazily(String prefix, int k) {
+        List<String> retVal = new ArrayList<>();
+        PriorityQueue<Cursor> heads = new PriorityQueue<>();
+        for (int s = 0; s < shards.length; s++) {
+            Cursor cursor = new Cursor(s, shards[s].weightedMatches(prefix, k).iterator());
+            if (cursor.advance()) {
+                heads.add(cursor);
+            }
+        }
+        while (retVal.size() < k && !heads.isEmpty()) {
+            Cursor cursor = heads.poll();
+            retVal.add(cursor.head.getTerm());
+            if (cursor.advance()) {
+                heads.add(cursor);
+            }
+        }
+        return retVal;
+    }
+
+    // Shard of a term; the same term always hashes to the same shard
+    private static int shard(String term, int shards) {
+        return (term.hashCode() & Integer.MAX_VALUE) % shards;
+    }
+
+    /** The k best weights any shard has found so far, for one query */
+    private static final class Bound {
+        private final double[] heap;    // min-heap of the best weights
+        private int size;
+        private volatile double kth = Double.NEGATIVE_INFINITY;
+
+        Bound(int k) {
+            heap = new double[k];
+        }
+
+        /** Weight a match needs to still make the top k */
+        double kth() {
+            return kth;
+        }
+
+        synchronized void offer(double w) {
+            if (size < heap.length) {
+                int i = size++;
+                while (i > 0 && heap[(i - 1) >>> 1] > w) {
+                    heap[i] = heap[(i - 1) >>> 1];
+                    i = (i - 1) >>> 1;
+                }
+                heap[i] = w;
+            } else if (w > heap[0]) {
+                // replace the smallest and sift down
+                int i = 0;
+                while (true) {
+                    int child = 2 * i + 1;
+                    if (child >= size) {
+                        break;
+                    }
+                    if (child + 1 < size && heap[child + 1] < heap[child]) {
+                        child++;
+                    }
+                    if (heap[child] >= w) {
+                        break;
+                    }
+                    heap[i] = heap[child];
+                    i = child;
+                }
+                heap[i] = w;
+            } else {
+                return;
+            }
+            if (size == heap.length) {
+                kth = heap[0];
+            }
+        }
+    }
+
+    /** One shard's match stream with its next match, ordered as topMatches
+     *  merges: higher weight first, then lower shard */
+    private static final class Cursor implements Comparable<Cursor> {
+        private final int shard;
+        private final Iterator<Autocomplete.Match> matches;
+        Autocomplete.Match head;
+
+        Cursor(int shard, Iterator<Autocomplete.Match> matches) {
+            this.shard = shard;
+            this.matches = matches;
+        }
+
+        /** Moves to the next match, false once the stream is done */
+        boolean advance() {
+            head = matches.hasNext() ? matches.next() : null;
+            return head != null;
+        }
+
+        @Override
+        public int compareTo(Cursor other) {
+            double w = head.getWeight();
+            double ow = other.head.getWeight();
+            return w != ow ? Double.compare(ow, w) : Integer.compare(shard, other.shard);
+        }
+    }
+
+    /** Reads one shard's matches until they can no longer make the top k */
+    @SuppressWarnings("serial")
+    private static final class ShardQuery extends RecursiveAction {
+        private final Autocomplete shard;
+        private final String prefix;
+        private final int k;
+        private final Bound bound;
+        final List<Autocomplete.Match> found = new ArrayList<>();
+
+        ShardQuery(Autocomplete shard, String prefix, int k, Bound bound) {
+            this.shard = shard;
+            this.prefix = prefix;
+            this.k = k;
+            this.bound = bound;
+        }
+
+        @Override
+        protected void compute() {
+            // the search is lazy, so leaving the loop stops it expanding
+            for (Autocomplete.Match match : shard.weightedMatches(prefix, k)) {
+                if (match.getWeight() < bound.kth()) {
+                    break;
+                }
+                found.add(match);
+                bound.offer(match.getWeight());
+            }
+        }
+    }
+}
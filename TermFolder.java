@@ -0,0 +1,72 @@
+import java.text.Normalizer;
+import java.util.regex.Pattern;
+
+/**
+ * Folds strings to the keys of a case- and accent-insensitive index: Unicode
+ * compatibility decomposition (NFKD, so "ﬁ" becomes "fi" and "①" becomes
+ * "1"), then lower case one code point at a time with final sigma as
+ * sigma, then every combining mark dropped, so "Café" and "cafe" share the
+ * key "cafe". Terms and queries go through the same fold, so typing the
+ * start of a term in any case, with or without its accents, walks to that
+ * term.
+ *
+ * @author
+ */
+public class TermFolder {
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+
+    private TermFolder() {
+    }
+
+    /**
+     * Returns the folded key of s. ASCII strings only need their capitals
+     * lowered, and come back unchanged if they have none.
+     *
+     * Runtime: O(N) - N = length of s
+     * @param s - term or query
+     * @return folded key
+     */
+    public static String fold(String s) {
+        int upper = -1;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 0x80) {
+                String retVal = lower(Normalizer.normalize(s, Normalizer.Form.NFKD));
+                return MARKS.matcher(retVal).replaceAll("");
+            }
+            if (upper < 0 && c >= 'A' && c <= 'Z') {
+                upper = i;
+            }
+        }
+        if (upper < 0) {
+            return s;
+        }
+        char[] chars = s.toCharArray();
+        for (int i = upper; i < chars.length; i++) {
+            if (chars[i] >= 'A' && chars[i] <= 'Z') {
+                chars[i] += 'a' - 'A';
+            }
+        }
+        return new String(chars);
+    }
+
+    // Lowers each code point on its own. String.toLowerCase looks at the
+    // context, lowering a Greek capital sigma at the end of a word to final
+    // sigma, so a query would fold differently from the terms it starts;
+    // final sigma is mapped to sigma for the same reason.
+    private static String lower(String s) {
+        StringBuilder retVal = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); ) {
+            int c = s.codePointAt(i);
+            int lower = Character.toLowerCase(c);
+            retVal.appendCodePoint(lower == '\u03c2' ? '\u03c3' : lower);
+            i += Character.charCount(c);
+        }
+        return retVal.toString();
+    }
+
+    /** Folds one ASCII char, which folds on its own */
+    static char fold(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + 'a' - 'A') : c;
+    }
+}
@@ -302,6 +302,1269 @@ public class TestAutocomplete {
         assertFalse(testing);
     }
 
+    /** Check prefixes that end in the middle of a compressed edge */
+    @Test
+    public void testTopMatchesMidEdge() {
+        String[] s = {"Harry Potter and the Deathly Hallows: Part 1 (2010)",
+            "Harry Potter and the Goblet of Fire (2005)", "Harry Houdini", "Harriet"};
+        double[] d = {50.0, 40.0, 30.0, 20.0};
+
+        Autocomplete test = new Autocomplete(s, d);
+        assertEquals(s[0], test.topMatch("Harry Pot"));
+        assertEquals(s[2], test.topMatch("Harry H"));
+        assertEquals(s[3], test.topMatch("Harri"));
+        assertEquals(null, test.topMatch("Harry Pz"));
+
+        Iterator<String> iter = test.topMatches("Harry Potter and the ", 5).iterator();
+        assertEquals(s[0], iter.next());
+        assertEquals(s[1], iter.next());
+        assertFalse(iter.hasNext());
+        assertFalse(test.topMatches("Harry Potter and the Deathly Hallows: Part 2", 5)
+            .iterator().hasNext());
+
+        assertTrue(test.weightOf("Harry Houdini") == 30.0);
+        assertTrue(test.weightOf("Harry Houd") == 0.0);
+        assertTrue(test.weightOf("Harry") == 0.0);
+    }
+
+    /** Check topMatch, topMatches and weightOf against a brute force scan over
+     *  every prefix of a random dictionary
+     */
+    @Test
+    public void testAgainstBruteForce() {
+        String characters = "abcd";
+        Random rng = new Random(61);
+        java.util.HashSet<String> seen = new java.util.HashSet<>();
+        while (seen.size() < 300) {
+            seen.add(generateString(characters, 1 + rng.nextInt(7)));
+        }
+        String[] s = seen.toArray(new String[0]);
+        double[] d = new double[s.length];
+        for (int i = 0; i < s.length; i++) {
+            d[i] = rng.nextInt(1000000) / 7.0;
+        }
+        Autocomplete test = new Autocomplete(s, d);
+
+        for (String prefix : new String[] {"", "a", "ab", "dcb", "bbbb", "abcdabcd"}) {
+            java.util.List<String> expected = bruteForce(s, d, prefix);
+            java.util.List<String> actual = new java.util.ArrayList<>();
+            for (String term : test.topMatches(prefix, 20)) {
+                actual.add(term);
+            }
+            assertEquals(expected.subList(0, Math.min(20, expected.size())), actual);
+            assertEquals(expected.isEmpty() ? null : expected.get(0), test.topMatch(prefix));
+        }
+        for (int i = 0; i < s.length; i++) {
+            assertTrue(test.weightOf(s[i]) == d[i]);
+        }
+        assertTrue(test.weightOf("abcdabcd") == 0.0);
+    }
+
+    /** Check that the precomputed top-K cache answers the same as a search */
+    @Test
+    public void testPrecomputedTopMatches() {
+        String characters = "abc";
+        Random rng = new Random(4);
+        java.util.HashSet<String> seen = new java.util.HashSet<>();
+        while (seen.size() < 200) {
+            seen.add(generateString(characters, 1 + rng.nextInt(6)));
+        }
+        String[] s = seen.toArray(new String[0]);
+        double[] d = new double[s.length];
+        for (int i = 0; i < s.length; i++) {
+            d[i] = rng.nextInt(1000000) / 3.0;
+        }
+        Autocomplete plain = new Autocomplete(s, d);
+        Autocomplete cached = new Autocomplete(s, d);
+        long estimate = cached.estimateTopMatchesCache(5, 2, 50);
+        cached.precomputeTopMatches(5, 2, 50);
+        assertTrue(estimate > 0);
+        assertTrue(cached.memoryReport().contains("K=5"));
+
+        for (String prefix : new String[] {"", "a", "b", "ca", "abc", "cccc", "d"}) {
+            for (int k = 0; k <= 7; k++) {
+                java.util.List<String> expected = new java.util.ArrayList<>();
+                for (String term : plain.topMatches(prefix, k)) {
+                    expected.add(term);
+                }
+                java.util.List<String> actual = new java.util.ArrayList<>();
+                for (String term : cached.topMatches(prefix, k)) {
+                    actual.add(term);
+                }
+                assertEquals(expected, actual);
+            }
+            assertEquals(plain.topMatch(prefix), cached.topMatch(prefix));
+        }
+    }
+
+    /** Check that an index written to disk and mapped back answers the same */
+    @Test
+    public void testMappedIndex() throws java.io.IOException {
+        String[] s = {"a", "ab", "abed", "banana", "baddie", "bananarooski", "bed",
+            "༼♥ل͜♥༽", "ლ(́◉◞౪◟◉‵ლ)", "Pray for Harambe"};
+        double[] d = {9.0, 50.0, 25.0, 50.0, 55.0, 54.0, 9000.0, 1.0, 2.0, 400.0};
+        Autocomplete heap = new Autocomplete(s, d);
+        heap.precomputeTopMatches(3, 1, 100);
+
+        java.io.File file = java.io.File.createTempFile("autocomplete", ".idx");
+        file.deleteOnExit();
+        heap.write(file.getPath());
+        Autocomplete mapped = new Autocomplete(file.getPath());
+
+        for (String prefix : new String[] {"", "a", "b", "ba", "ban", "bz", "ლ", "Pray f"}) {
+            for (int k : new int[] {1, 3, 10}) {
+                java.util.List<String> expected = new java.util.ArrayList<>();
+                for (String term : heap.topMatches(prefix, k)) {
+                    expected.add(term);
+                }
+                java.util.List<String> actual = new java.util.ArrayList<>();
+                for (String term : mapped.topMatches(prefix, k)) {
+                    actual.add(term);
+                }
+                assertEquals(expected, actual);
+            }
+            assertEquals(heap.topMatch(prefix), mapped.topMatch(prefix));
+        }
+        for (int i = 0; i < s.length; i++) {
+            assertTrue(mapped.weightOf(s[i]) == d[i]);
+        }
+        assertTrue(mapped.memoryReport().contains("memory-mapped"));
+    }
+
+    /** Check that files that are not indexes are rejected */
+    @Test
+    public void testMappedIndexInvalid() throws java.io.IOException {
+        java.io.File file = java.io.File.createTempFile("autocomplete", ".idx");
+        file.deleteOnExit();
+        java.nio.file.Files.write(file.toPath(), "3\n1.0\ta\n".getBytes("UTF-8"));
+        try {
+            new Autocomplete(file.getPath());
+            fail();
+        } catch (java.io.IOException e) {
+            // not an index
+        }
+
+        // a truncated index, and headers with a negative or huge count
+        new Autocomplete(new String[] {"a", "ab", "bed"}, new double[] {1.0, 2.0, 3.0}).write(file.getPath());
+        byte[] index = java.nio.file.Files.readAllBytes(file.toPath());
+        byte[][] corrupt = {java.util.Arrays.copyOf(index, index.length - 9), index.clone(), index.clone(),
+            index.clone()};
+        java.nio.ByteBuffer.wrap(corrupt[1]).order(java.nio.ByteOrder.LITTLE_ENDIAN).putInt(8, -5);
+        java.nio.ByteBuffer.wrap(corrupt[2]).order(java.nio.ByteOrder.LITTLE_ENDIAN).putInt(8, Integer.MAX_VALUE);
+        java.nio.ByteBuffer.wrap(corrupt[3]).order(java.nio.ByteOrder.LITTLE_ENDIAN).putInt(20, 1 << 20);
+        for (byte[] bytes : corrupt) {
+            java.nio.file.Files.write(file.toPath(), bytes);
+            try {
+                new Autocomplete(file.getPath());
+                fail();
+            } catch (java.io.IOException e) {
+                // rejected
+            }
+        }
+    }
+
+    /** Check that dictionary files load in order and short files are rejected */
+    @Test
+    public void testLoadDictionary() throws java.io.IOException {
+        java.io.File file = java.io.File.createTempFile("autocomplete", ".txt");
+        file.deleteOnExit();
+        java.nio.file.Files.write(file.toPath(), "3\n  5.0\tb c\n1.5\ta\n 0\tab\n".getBytes("UTF-8"));
+        Autocomplete.Dictionary d = Autocomplete.load(file.getPath());
+        assertArrayEquals(new String[] {"b c", "a", "ab"}, d.terms);
+        assertTrue(java.util.Arrays.equals(new double[] {5.0, 1.5, 0.0}, d.weights));
+        assertEquals("b c", Autocomplete.open(file.getPath()).topMatch(""));
+
+        for (String text : new String[] {"3\n5.0\tb c\n1.5\ta\n", "2\n5.0\tb c\n1.5 a\n"}) {
+            java.nio.file.Files.write(file.toPath(), text.getBytes("UTF-8"));
+            try {
+                Autocomplete.load(file.getPath());
+                fail();
+            } catch (java.io.IOException e) {
+                // missing line, or a line without a tab
+            }
+        }
+    }
+
+    /** Check that the parallel bulk build matches sequential insertion and
+     *  still rejects duplicate terms and negative weights
+     */
+    @Test
+    public void testBulkBuild() {
+        int n = Autocomplete.PARALLEL_THRESHOLD + 1000;
+        String characters = "ABCabc xyz中";
+        Random rng = new Random(6);
+        java.util.HashSet<String> seen = new java.util.HashSet<>();
+        seen.add("");
+        while (seen.size() < n) {
+            seen.add(generateString(characters, 1 + rng.nextInt(9)));
+        }
+        String[] s = seen.toArray(new String[0]);
+        double[] d = new double[n];
+        for (int i = 0; i < n; i++) {
+            d[i] = rng.nextInt(100000000) / 9.0;
+            if (s[i].isEmpty()) {
+                // "" outweighs every term, so it leads the root's matches
+                d[i] = 100000000;
+            }
+        }
+        Autocomplete bulk = new Autocomplete(s, d);
+        assertEquals("", bulk.topMatch(""));
+        assertEquals("", bulk.topMatches("", 5).iterator().next());
+
+        Trie sequential = new Trie(true);
+        for (int i = 0; i < n; i++) {
+            sequential.acInsert(s[i], d[i]);
+        }
+        TrieIndex expected = TrieIndex.compile(sequential);
+        assertEquals(expected.size(), bulk.index.size());
+        for (String prefix : new String[] {"", "A", "ab", "中", "x y", "cccc"}) {
+            int node = expected.walk(prefix);
+            java.util.List<String> want = node == TrieIndex.NONE
+                ? java.util.Collections.<String>emptyList()
+                : java.util.Arrays.asList(expected.priorityDFS(node, 25));
+            java.util.List<String> got = new java.util.ArrayList<>();
+            for (String term : bulk.topMatches(prefix, 25)) {
+                got.add(term);
+            }
+            assertEquals(want, got);
+        }
+        for (int i = 0; i < n; i += 97) {
+            assertTrue(s[i].isEmpty() || bulk.weightOf(s[i]) == d[i]);
+        }
+
+        String[] dup = s.clone();
+        dup[n - 1] = dup[3];
+        try {
+            new Autocomplete(dup, d);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("duplicate terms", e.getMessage());
+        }
+        double[] negative = d.clone();
+        negative[n / 2] = -1.0;
+        try {
+            new Autocomplete(s, negative);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("negative weight", e.getMessage());
+        }
+    }
+
+    /** Check that one Autocomplete shared by many threads answers every query
+     *  the same as a single thread, while the top-K cache is swapped out
+     *  underneath the readers
+     */
+    @Test
+    public void testConcurrentQueries() throws Exception {
+        String characters = "abcd";
+        Random rng = new Random(7);
+        java.util.HashSet<String> seen = new java.util.HashSet<>();
+        while (seen.size() < 2000) {
+            seen.add(generateString(characters, 1 + rng.nextInt(8)));
+        }
+        String[] s = seen.toArray(new String[0]);
+        double[] d = new double[s.length];
+        for (int i = 0; i < s.length; i++) {
+            d[i] = rng.nextInt(1000000) / 7.0;
+        }
+        Autocomplete test = new Autocomplete(s, d);
+
+        String[] prefixes = {"", "a", "b", "cd", "dab", "abca", "bbbbbbbb", "e"};
+        java.util.List<java.util.List<String>> expected = new java.util.ArrayList<>();
+        for (String prefix : prefixes) {
+            java.util.List<String> want = bruteForce(s, d, prefix);
+            expected.add(want.subList(0, Math.min(10, want.size())));
+        }
+
+        int threads = 8;
+        java.util.concurrent.ExecutorService pool =
+            java.util.concurrent.Executors.newFixedThreadPool(threads + 1);
+        java.util.concurrent.CountDownLatch start = new java.util.concurrent.CountDownLatch(1);
+        java.util.concurrent.atomic.AtomicBoolean done =
+            new java.util.concurrent.atomic.AtomicBoolean();
+        java.util.List<java.util.concurrent.Future<String>> readers = new java.util.ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int seed = t;
+            readers.add(pool.submit(() -> {
+                Random r = new Random(seed);
+                start.await();
+                for (int i = 0; i < 3000; i++) {
+                    int p = r.nextInt(prefixes.length);
+                    int k = 1 + r.nextInt(10);
+                    java.util.List<String> got = new java.util.ArrayList<>();
+                    for (String term : test.topMatches(prefixes[p], k)) {
+                        got.add(term);
+                    }
+                    java.util.List<String> want = expected.get(p);
+                    if (!got.equals(want.subList(0, Math.min(k, want.size())))) {
+                        return "topMatches(\"" + prefixes[p] + "\", " + k + ") = " + got;
+                    }
+                    int w = r.nextInt(s.length);
+                    if (test.weightOf(s[w]) != d[w]) {
+                        return "weightOf(\"" + s[w] + "\")";
+                    }
+                }
+                return null;
+            }));
+        }
+        java.util.concurrent.Future<?> writer = pool.submit(() -> {
+            start.await();
+            for (int i = 0; !done.get(); i++) {
+                test.precomputeTopMatches(1 + i % 10, i % 4, 100);
+            }
+            return null;
+        });
+        start.countDown();
+        for (java.util.concurrent.Future<String> reader : readers) {
+            assertEquals(null, reader.get());
+        }
+        done.set(true);
+        writer.get();
+        pool.shutdown();
+    }
+
+    /** Check that updateWeight and remove keep topMatch, topMatches and
+     *  weightOf in line with a brute force scan, with and without a top-K
+     *  cache, and that a mapped index refuses updates
+     */
+    @Test
+    public void testUpdateAndRemove() throws java.io.IOException {
+        String characters = "abc";
+        Random rng = new Random(8);
+        java.util.HashSet<String> seen = new java.util.HashSet<>();
+        while (seen.size() < 300) {
+            seen.add(generateString(characters, 1 + rng.nextInt(6)));
+        }
+        String[] s = seen.toArray(new String[0]);
+        double[] d = new double[s.length];
+        // distinct weights keep the expected order unambiguous
+        java.util.HashSet<Double> used = new java.util.HashSet<>();
+        for (int i = 0; i < s.length; i++) {
+            do {
+                d[i] = rng.nextInt(1000000) / 7.0;
+            } while (!used.add(d[i]));
+        }
+        Autocomplete plain = new Autocomplete(s, d);
+        Autocomplete cached = new Autocomplete(s, d);
+        cached.precomputeTopMatches(5, 2, 20);
+
+        java.util.Map<String, Double> live = new java.util.HashMap<>();
+        for (int i = 0; i < s.length; i++) {
+            live.put(s[i], d[i]);
+        }
+        for (int round = 0; round < 400; round++) {
+            String term = s[rng.nextInt(s.length)];
+            if (rng.nextInt(3) == 0) {
+                boolean present = live.remove(term) != null;
+                assertEquals(present, plain.remove(term));
+                assertEquals(present, cached.remove(term));
+            } else {
+                double w;
+                do {
+                    w = rng.nextInt(1000000) / 7.0;
+                } while (!used.add(w));
+                boolean present = live.containsKey(term);
+                if (present) {
+                    live.put(term, w);
+                }
+                assertEquals(present, plain.updateWeight(term, w));
+                assertEquals(present, cached.updateWeight(term, w));
+            }
+            if (round % 20 != 0) {
+                continue;
+            }
+            String[] terms = live.keySet().toArray(new String[0]);
+            double[] weights = new double[terms.length];
+            for (int i = 0; i < terms.length; i++) {
+                weights[i] = live.get(terms[i]);
+            }
+            for (String prefix : new String[] {"", "a", "b", "ca", "abc", "cccc"}) {
+                java.util.List<String> expected = bruteForce(terms, weights, prefix);
+                for (Autocomplete test : new Autocomplete[] {plain, cached}) {
+                    java.util.List<String> actual = new java.util.ArrayList<>();
+                    for (String t : test.topMatches(prefix, 7)) {
+                        actual.add(t);
+                    }
+                    assertEquals(expected.subList(0, Math.min(7, expected.size())), actual);
+                    assertEquals(expected.isEmpty() ? null : expected.get(0),
+                        test.topMatch(prefix));
+                }
+            }
+            for (String term2 : s) {
+                Double w = live.get(term2);
+                assertTrue(plain.weightOf(term2) == (w == null ? 0.0 : w));
+            }
+        }
+
+        // removing everything leaves nothing to match
+        for (String term : s) {
+            plain.remove(term);
+        }
+        assertEquals(null, plain.topMatch(""));
+        assertFalse(plain.topMatches("a", 5).iterator().hasNext());
+        assertFalse(plain.updateWeight(s[0], 1.0));
+
+        try {
+            plain.updateWeight(s[0], -1.0);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("negative weight", e.getMessage());
+        }
+        java.io.File file = java.io.File.createTempFile("autocomplete", ".idx");
+        file.deleteOnExit();
+        cached.write(file.getPath());
+        Autocomplete mapped = new Autocomplete(file.getPath());
+        assertEquals(cached.topMatch("b"), mapped.topMatch("b"));
+        try {
+            mapped.remove(s[0]);
+            fail();
+        } catch (UnsupportedOperationException e) {
+            return;
+        }
+    }
+
+    /** Check that topMatches is lazy and re-iterable: a huge k costs only the
+     *  results read, each iterator restarts the search, and an exhausted
+     *  iterator throws
+     */
+    @Test
+    public void testLazyTopMatches() {
+        String characters = "abc";
+        Random rng = new Random(9);
+        java.util.HashSet<String> seen = new java.util.HashSet<>();
+        while (seen.size() < 200) {
+            seen.add(generateString(characters, 1 + rng.nextInt(6)));
+        }
+        String[] s = seen.toArray(new String[0]);
+        double[] d = new double[s.length];
+        for (int i = 0; i < s.length; i++) {
+            d[i] = rng.nextInt(1000000) / 3.0;
+        }
+        Autocomplete test = new Autocomplete(s, d);
+
+        Iterable<String> all = test.topMatches("a", Integer.MAX_VALUE);
+        java.util.List<String> expected = bruteForce(s, d, "a");
+        java.util.Iterator<String> first = all.iterator();
+        for (int i = 0; i < 5; i++) {
+            assertTrue(first.hasNext());
+            assertTrue(first.hasNext());
+            assertEquals(expected.get(i), first.next());
+        }
+        java.util.List<String> actual = new java.util.ArrayList<>();
+        for (String term : all) {
+            actual.add(term);
+        }
+        assertEquals(expected, actual);
+
+        java.util.Iterator<String> three = test.topMatches("b", 3).iterator();
+        for (int i = 0; i < 3; i++) {
+            three.next();
+        }
+        assertFalse(three.hasNext());
+        try {
+            three.next();
+            fail();
+        } catch (java.util.NoSuchElementException e) {
+            assertFalse(three.hasNext());
+        }
+
+        Autocomplete empty = new Autocomplete(new String[0], new double[0]);
+        assertEquals(null, empty.topMatch(""));
+        assertFalse(empty.topMatches("", 5).iterator().hasNext());
+    }
+
+    /** Check that topMatches into a caller buffer matches the brute force
+     *  order and, once warm, allocates nothing on the querying thread
+     */
+    @Test
+    public void testTopMatchesBuffer() {
+        String characters = "abcd";
+        Random rng = new Random(10);
+        java.util.HashSet<String> seen = new java.util.HashSet<>();
+        while (seen.size() < 500) {
+            seen.add(generateString(characters, 1 + rng.nextInt(7)));
+        }
+        String[] s = seen.toArray(new String[0]);
+        double[] d = new double[s.length];
+        for (int i = 0; i < s.length; i++) {
+            d[i] = rng.nextInt(1000000) / 7.0;
+        }
+        Autocomplete test = new Autocomplete(s, d);
+        String[] prefixes = {"", "a", "db", "abca", "e"};
+
+        String[] out = new String[8];
+        for (String prefix : prefixes) {
+            java.util.List<String> expected = bruteForce(s, d, prefix);
+            int found = test.topMatches(prefix, out);
+            assertEquals(expected.subList(0, Math.min(8, expected.size())),
+                java.util.Arrays.asList(out).subList(0, found));
+        }
+        assertEquals(0, test.topMatches("a", new String[0]));
+
+        java.lang.management.ThreadMXBean bean =
+            java.lang.management.ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return;
+        }
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) bean;
+        if (!allocations.isThreadAllocatedMemorySupported() || !allocations.isThreadAllocatedMemoryEnabled()) {
+            return;
+        }
+        long thread = Thread.currentThread().getId();
+        int queries = 100000;
+        for (int i = 0; i < queries / 10; i++) {
+            test.topMatches(prefixes[i % prefixes.length], out);
+        }
+        long before = allocations.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < queries; i++) {
+            test.topMatches(prefixes[i % prefixes.length], out);
+        }
+        long after = allocations.getThreadAllocatedBytes(thread);
+        // under a byte per query: no query allocates, allowing for the odd
+        // allocation the JVM itself charges to the thread
+        assertTrue(after - before < queries);
+    }
+
+    /** Check that topMatchesBatch answers every prefix like topMatches,
+     *  including repeats, misses, prefixes ending mid-edge and batches large
+     *  enough to be split
+     */
+    @Test
+    public void testTopMatchesBatch() {
+        String characters = "abcd";
+        Random rng = new Random(12);
+        java.util.HashSet<String> seen = new java.util.HashSet<>();
+        while (seen.size() < 1000) {
+            seen.add(generateString(characters, 1 + rng.nextInt(8)));
+        }
+        String[] s = seen.toArray(new String[0]);
+        double[] d = new double[s.length];
+        for (int i = 0; i < s.length; i++) {
+            d[i] = rng.nextInt(1000000) / 7.0;
+        }
+        Autocomplete test = new Autocomplete(s, d);
+
+        String[] prefixes = new String[500];
+        for (int i = 0; i < prefixes.length; i++) {
+            String term = s[rng.nextInt(s.length)];
+            switch (i % 4) {
+                case 0:
+                    prefixes[i] = term.substring(0, rng.nextInt(term.length() + 1));
+                    break;
+                case 1:
+                    prefixes[i] = term + "e";
+                    break;
+                case 2:
+                    prefixes[i] = prefixes[rng.nextInt(i)];
+                    break;
+                default:
+                    prefixes[i] = generateString(characters, rng.nextInt(5));
+            }
+        }
+        for (int n : new int[] {0, 1, 7, prefixes.length}) {
+            String[] batch = java.util.Arrays.copyOf(prefixes, n);
+            String[][] results = test.topMatchesBatch(batch, 6);
+            assertEquals(n, results.length);
+            for (int i = 0; i < n; i++) {
+                java.util.List<String> expected = new java.util.ArrayList<>();
+                for (String term : test.topMatches(batch[i], 6)) {
+                    expected.add(term);
+                }
+                assertEquals(expected, java.util.Arrays.asList(results[i]));
+            }
+        }
+        assertEquals(0, test.topMatchesBatch(prefixes, 0)[0].length);
+
+        // the split batch, forked on a pool of its own
+        java.util.concurrent.ForkJoinPool pool = new java.util.concurrent.ForkJoinPool(4);
+        try {
+            String[][] forked = test.topMatchesBatch(prefixes, 6, pool);
+            String[][] common = test.topMatchesBatch(prefixes, 6);
+            for (int i = 0; i < prefixes.length; i++) {
+                assertEquals(java.util.Arrays.asList(common[i]), java.util.Arrays.asList(forked[i]));
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        try {
+            test.topMatchesBatch(new String[] {"a", null}, 3);
+            fail();
+        } catch (IllegalArgumentException e) {
+            return;
+        }
+    }
+
+    /** Check that a keystroke session tracks typing, backspace and setText,
+     *  including prefixes that end inside a compressed edge or leave the
+     *  index, and returns the same matches as topMatches with their weights
+     */
+    @Test
+    public void testSession() {
+        String[] s = {"Pray for Harambe", "Pray for preys", "Pray", "P", "Bush did 9/11",
+            "Bush did", "banana", "bananarooski", "bed"};
+        double[] d = {400.0, 100.0, 16.0, 19.0, 911.0, 1.0, 50.0, 54.0, 9000.0};
+        Autocomplete test = new Autocomplete(s, d);
+        AutocompleteSession session = new AutocompleteSession(test);
+        String typed = "Pray for Hz";
+        for (int i = 0; i < typed.length(); i++) {
+            session.append(typed.charAt(i));
+            assertSessionMatches(test, session, typed.substring(0, i + 1));
+        }
+        for (int i = typed.length() - 1; i >= 0; i--) {
+            assertTrue(session.backspace());
+            assertSessionMatches(test, session, typed.substring(0, i));
+        }
+        assertFalse(session.backspace());
+
+        for (String text : new String[] {"ban", "bananaroo", "bed", "Bush did 9", "b", "", "x"}) {
+            session.setText(text);
+            assertEquals(text, session.getText());
+            assertSessionMatches(test, session, text);
+        }
+        java.util.List<Autocomplete.Match> top = new AutocompleteSession(test).topMatches(2);
+        assertEquals("bed", top.get(0).getTerm());
+        assertTrue(top.get(0).getWeight() == 9000.0);
+        assertEquals("Bush did 9/11", top.get(1).getTerm());
+    }
+
+    /** Check the result cache: hits and misses, LRU eviction, invalidation
+     *  of every prefix of an updated term, and hot key save / warm
+     */
+    @Test
+    public void testCachedAutocomplete() throws java.io.IOException {
+        String[] s = {"Pray for Harambe", "Pray for preys", "Pray", "P", "banana", "bed"};
+        double[] d = {400.0, 100.0, 16.0, 19.0, 50.0, 9000.0};
+        CachedAutocomplete test = new CachedAutocomplete(new Autocomplete(s, d), 3);
+        assertEquals(java.util.Arrays.asList("Pray for Harambe", "Pray for preys"),
+            test.topMatches("Pray", 2));
+        assertEquals(java.util.Arrays.asList("Pray for Harambe", "Pray for preys"),
+            test.topMatches("Pray", 2));
+        assertEquals(1, test.hits());
+        assertEquals(1, test.misses());
+
+        test.topMatches("b", 1);
+        test.topMatches("P", 5);
+        test.topMatches("Pray", 2);
+        test.topMatches("ba", 1);
+        // "b" was the least recently used of four keys
+        assertEquals(3, test.size());
+        test.topMatches("b", 1);
+        assertEquals(2, test.hits());
+        assertEquals(5, test.misses());
+
+        // "Pray" is a prefix of the updated term, "b" and "ba" are not
+        assertTrue(test.updateWeight("Pray", 1000.0));
+        assertEquals(2, test.size());
+        assertEquals("Pray", test.topMatch("Pray"));
+        assertEquals(java.util.Arrays.asList("Pray", "Pray for Harambe"),
+            test.topMatches("Pray", 2));
+        assertTrue(test.remove("Pray"));
+        assertEquals(java.util.Arrays.asList("Pray for Harambe", "Pray for preys"),
+            test.topMatches("Pray", 2));
+        assertFalse(test.updateWeight("Pray", 1.0));
+
+        // a client sweeping k leaves only the k of live entries to invalidate
+        CachedAutocomplete swept = new CachedAutocomplete(new Autocomplete(s, d), 3);
+        for (int k = 0; k < 1000; k++) {
+            swept.topMatches("P", k);
+        }
+        assertEquals(3, swept.distinctKs());
+        assertTrue(swept.updateWeight("Pray", 5.0));
+        assertEquals(0, swept.size());
+        assertEquals(0, swept.distinctKs());
+        swept.topMatches("b", 7);
+        swept.topMatches("ba", 7);
+        assertEquals(1, swept.distinctKs());
+        swept.clear();
+        assertEquals(0, swept.distinctKs());
+
+        java.io.File hot = java.io.File.createTempFile("hot", ".txt");
+        hot.deleteOnExit();
+        test.saveHotKeys(hot.getPath());
+        CachedAutocomplete warmed = new CachedAutocomplete(new Autocomplete(s, d), 3);
+        assertEquals(2, warmed.warm(hot.getPath()));
+        assertEquals(2, warmed.size());
+        assertEquals(0, warmed.misses());
+        warmed.topMatches("b", 1);
+        assertEquals(1, warmed.hits());
+
+        // on a folded dictionary prefixes that fold alike share an entry,
+        // and an update drops the entries of its folded prefixes
+        String[] f = {"Café", "cafeteria", "Cab"};
+        double[] fd = {50.0, 10.0, 5.0};
+        CachedAutocomplete folded = new CachedAutocomplete(new Autocomplete(f, fd, true), 10);
+        assertEquals(java.util.Arrays.asList("Café", "cafeteria"), folded.topMatches("caf", 2));
+        assertEquals(java.util.Arrays.asList("Café", "cafeteria"), folded.topMatches("CAF", 2));
+        assertEquals(1, folded.hits());
+        assertEquals("Café", folded.topMatch("CA"));
+        assertTrue(folded.remove("Café"));
+        assertEquals(java.util.Arrays.asList("cafeteria"), folded.topMatches("CAF", 2));
+        assertEquals(java.util.Arrays.asList("cafeteria"), folded.topMatches("caf", 2));
+        assertEquals("cafeteria", folded.topMatch("ca"));
+    }
+
+    /* Helper method checking a session against topMatches and weightOf */
+    public void assertSessionMatches(Autocomplete test, AutocompleteSession session, String text) {
+        java.util.List<String> expected = new java.util.ArrayList<>();
+        for (String term : test.topMatches(text, 4)) {
+            expected.add(term);
+        }
+        java.util.List<Autocomplete.Match> actual = session.topMatches(4);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < actual.size(); i++) {
+            assertEquals(expected.get(i), actual.get(i).getTerm());
+            assertTrue(test.weightOf(expected.get(i)) == actual.get(i).getWeight());
+        }
+        java.util.List<Autocomplete.Match> lazy = new java.util.ArrayList<>();
+        for (Autocomplete.Match match : session.matches(4)) {
+            lazy.add(match);
+        }
+        assertEquals(actual.size(), lazy.size());
+        for (int i = 0; i < lazy.size(); i++) {
+            assertEquals(actual.get(i).getTerm(), lazy.get(i).getTerm());
+            assertTrue(actual.get(i).getWeight() == lazy.get(i).getWeight());
+        }
+    }
+
+    /** Check fuzzyTopMatches against every term scored by brute force, and
+     *  that it agrees with topMatches when no edits are allowed
+     */
+    @Test
+    public void testFuzzyTopMatches() {
+        String[] s = {"america", "american", "amerigo", "armenia", "amelia", "banana", "bed"};
+        double[] d = {100.0, 80.0, 5.0, 60.0, 40.0, 50.0, 9000.0};
+        Autocomplete test = new Autocomplete(s, d);
+        java.util.List<String> top = new java.util.ArrayList<>();
+        for (String term : test.fuzzyTopMatches("amercia", 3, 2)) {
+            top.add(term);
+        }
+        // "amelia" is two substitutions off too
+        assertEquals(java.util.Arrays.asList("america", "american", "amelia"), top);
+        assertFalse(test.fuzzyTopMatches("amercia", 3, 1).iterator().hasNext());
+        assertEquals("bed", test.fuzzyTopMatches("xed", 1, 1).iterator().next());
+
+        String characters = "abcd";
+        String[] s2 = new String[500];
+        double[] d2 = new double[500];
+        java.util.Set<String> seen = new java.util.HashSet<>();
+        for (int i = 0; i < s2.length; i++) {
+            do {
+                s2[i] = generateString(characters, 4 + i % 4);
+            } while (!seen.add(s2[i]));
+            d2[i] = i;
+        }
+        Autocomplete test2 = new Autocomplete(s2, d2);
+        test2.remove(s2[499]);
+        s2[499] = "removed";
+        for (int i = 0; i < 50; i++) {
+            String prefix = generateString(characters, i % 5);
+            java.util.List<String> expected = new java.util.ArrayList<>();
+            for (String term : test2.topMatches(prefix, 20)) {
+                expected.add(term);
+            }
+            java.util.List<String> actual = new java.util.ArrayList<>();
+            for (String term : test2.fuzzyTopMatches(prefix, 20, 0)) {
+                actual.add(term);
+            }
+            assertEquals(expected, actual);
+
+            for (int edits = 1; edits <= 2; edits++) {
+                expected.clear();
+                for (String term : bruteForce(s2, d2, "")) {
+                    if (prefixDistance(prefix, term) <= edits) {
+                        expected.add(term);
+                    }
+                }
+                expected = expected.subList(0, Math.min(20, expected.size()));
+                actual.clear();
+                for (String term : test2.fuzzyTopMatches(prefix, 20, edits)) {
+                    actual.add(term);
+                }
+                assertEquals(expected, actual);
+            }
+        }
+    }
+
+    /** Check infixTopMatches against a scan of every word start, including
+     *  after updateWeight and remove
+     */
+    @Test
+    public void testInfixTopMatches() {
+        String[] s = {"New York", "New York City", "Yorkshire", "york", "Newark", "the new-york"};
+        double[] d = {100.0, 80.0, 60.0, 5.0, 40.0, 1.0};
+        Autocomplete test = new Autocomplete(s, d);
+        try {
+            test.infixTopMatches("York", 3);
+            fail();
+        } catch (IllegalStateException e) {
+            // not built yet
+        }
+        test.buildInfixIndex();
+        assertEquals(java.util.Arrays.asList("New York", "New York City", "Yorkshire"),
+            test.infixTopMatches("York", 3));
+        assertEquals(java.util.Arrays.asList("New York City"), test.infixTopMatches("York C", 3));
+        assertEquals(java.util.Arrays.asList("york", "the new-york"), test.infixTopMatches("york", 5));
+        assertFalse(test.infixTopMatches("ork", 5).iterator().hasNext());
+
+        String characters = "ab -";
+        String[] s2 = new String[400];
+        double[] d2 = new double[400];
+        java.util.Set<String> seen = new java.util.HashSet<>();
+        for (int i = 0; i < s2.length; i++) {
+            do {
+                s2[i] = generateString(characters, 4 + i % 5);
+            } while (!seen.add(s2[i]));
+            d2[i] = i;
+        }
+        Autocomplete test2 = new Autocomplete(s2, d2);
+        test2.buildInfixIndex();
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 40; i++) {
+                String infix = generateString("ab", 1 + i % 3);
+                java.util.List<String> expected = new java.util.ArrayList<>();
+                for (String term : bruteForce(s2, d2, "")) {
+                    if (d2[java.util.Arrays.asList(s2).indexOf(term)] >= 0
+                            && (" " + term).matches("(?s).*[ -]" + infix + ".*")) {
+                        expected.add(term);
+                    }
+                }
+                expected = expected.subList(0, Math.min(10, expected.size()));
+                assertEquals(expected, test2.infixTopMatches(infix, 10));
+            }
+            // reweight and remove a few terms, then check again
+            for (int i = 0; i < 40; i++) {
+                int j = (round * 97 + i * 31) % s2.length;
+                if (d2[j] >= 0 && i % 4 == 0) {
+                    assertTrue(test2.remove(s2[j]));
+                    d2[j] = -1.0;
+                } else if (d2[j] >= 0) {
+                    d2[j] = 1000.0 + round * 100 + i;
+                    assertTrue(test2.updateWeight(s2[j], d2[j]));
+                }
+            }
+        }
+    }
+
+    /** Check case- and accent-insensitive matching: results keep the terms
+     *  as given, terms that fold alike all stay, and sessions, batches, the
+     *  index file and the bulk build all fold the same way
+     */
+    @Test
+    public void testFoldedMatching() throws java.io.IOException {
+        String[] s = {"New York", "new york", "NEW YORK CITY", "Nueva Yórk", "Café", "cafe",
+            "ﬁsh", "İstanbul", "ΟΔΟΣΤΡΩΜΑ"};
+        double[] d = {100.0, 5.0, 80.0, 60.0, 40.0, 45.0, 10.0, 20.0, 30.0};
+        Autocomplete test = new Autocomplete(s, d, true);
+        assertEquals(java.util.Arrays.asList("New York", "NEW YORK CITY", "new york"),
+            toList(test.topMatches("new y", 5)));
+        assertEquals(java.util.Arrays.asList("Nueva Yórk"), toList(test.topMatches("NUEVA YO", 5)));
+        assertEquals(java.util.Arrays.asList("cafe", "Café"), toList(test.topMatches("CAFÉ", 5)));
+        assertEquals(java.util.Arrays.asList("cafe", "Café"), toList(test.topMatches("cafe\u0301", 5)));
+        assertEquals(java.util.Arrays.asList("ﬁsh"), toList(test.topMatches("fi", 5)));
+        assertEquals("İstanbul", test.topMatch("istan"));
+        // a capital sigma ending the query folds like the one inside the term
+        assertEquals(TermFolder.fold("ΟΔΟ") + "σ", TermFolder.fold("ΟΔΟΣ"));
+        assertEquals("ΟΔΟΣΤΡΩΜΑ", test.topMatch("ΟΔΟΣ"));
+        assertEquals("ΟΔΟΣΤΡΩΜΑ", test.topMatch("οδος"));
+        assertEquals("New York", test.topMatch("new york"));
+        assertTrue(test.weightOf("new york") == 5.0);
+        assertTrue(test.weightOf("New York") == 100.0);
+        assertTrue(test.weightOf("NEW YORK") == 0.0);
+
+        String[][] batch = test.topMatchesBatch(new String[] {"NEW", "new", "cafÉ", "x"}, 2);
+        assertEquals(java.util.Arrays.asList("New York", "NEW YORK CITY"), java.util.Arrays.asList(batch[0]));
+        assertEquals(java.util.Arrays.asList(batch[0]), java.util.Arrays.asList(batch[1]));
+        assertEquals(java.util.Arrays.asList("cafe", "Café"), java.util.Arrays.asList(batch[2]));
+        assertEquals(0, batch[3].length);
+
+        AutocompleteSession session = new AutocompleteSession(test);
+        String typed = "NUEVA Yórk";
+        for (int i = 0; i < typed.length(); i++) {
+            session.append(typed.charAt(i));
+            assertSessionMatches(test, session, typed.substring(0, i + 1));
+        }
+        for (int i = typed.length() - 1; i >= 0; i--) {
+            assertTrue(session.backspace());
+            assertSessionMatches(test, session, typed.substring(0, i));
+        }
+        for (String text : new String[] {"Cafe\u0301", "caf", "NEW YORK C", "ﬁ"}) {
+            session.setText(text);
+            assertEquals(text, session.getText());
+            assertSessionMatches(test, session, text);
+        }
+
+        assertTrue(test.updateWeight("new york", 1000.0));
+        assertEquals(java.util.Arrays.asList("new york", "New York"), toList(test.topMatches("NEW", 2)));
+        assertTrue(test.remove("New York"));
+        assertFalse(test.remove("New York"));
+        assertEquals(java.util.Arrays.asList("new york", "NEW YORK CITY"),
+            toList(test.topMatches("new york", 5)));
+        assertTrue(test.weightOf("New York") == 0.0);
+        test.buildInfixIndex();
+        assertEquals(java.util.Arrays.asList("NEW YORK CITY"), toList(test.infixTopMatches("city", 5)));
+        assertEquals(java.util.Arrays.asList("Nueva Yórk"), toList(test.fuzzyTopMatches("nueba yor", 5, 1)));
+
+        java.io.File file = java.io.File.createTempFile("autocomplete", ".idx");
+        file.deleteOnExit();
+        test.write(file.getPath());
+        Autocomplete mapped = new Autocomplete(file.getPath());
+        assertEquals(toList(test.topMatches("NEW", 5)), toList(mapped.topMatches("NEW", 5)));
+        assertTrue(mapped.weightOf("new york") == 1000.0);
+        assertTrue(mapped.weightOf("New York") == 0.0);
+
+        // bulk build, including terms that fold alike, against a scan
+        int n = Autocomplete.PARALLEL_THRESHOLD + 100;
+        Random rng = new Random(18);
+        java.util.HashSet<String> seen = new java.util.HashSet<>();
+        while (seen.size() < n) {
+            seen.add(generateString("aAeéÉ b", 1 + rng.nextInt(9)));
+        }
+        String[] s2 = seen.toArray(new String[0]);
+        double[] d2 = new double[n];
+        String[] folded = new String[n];
+        for (int i = 0; i < n; i++) {
+            d2[i] = i;
+            folded[i] = TermFolder.fold(s2[i]);
+        }
+        Autocomplete bulk = new Autocomplete(s2, d2, true);
+        for (String prefix : new String[] {"", "A", "ae", "É", "a É", "eeee"}) {
+            java.util.List<String> expected = new java.util.ArrayList<>();
+            for (int i = n - 1; i >= 0 && expected.size() < 25; i--) {
+                if (folded[i].startsWith(TermFolder.fold(prefix))) {
+                    expected.add(s2[i]);
+                }
+            }
+            assertEquals(expected, toList(bulk.topMatches(prefix, 25)));
+        }
+        for (int i = 0; i < n; i += 97) {
+            assertTrue(bulk.weightOf(s2[i]) == d2[i]);
+        }
+    }
+
+    /** Check that a sharded dictionary answers like a single one, including
+     *  after updates, and still rejects duplicates
+     */
+    @Test
+    public void testShardedAutocomplete() {
+        String characters = "abc d";
+        Random rng = new Random(19);
+        java.util.HashSet<String> seen = new java.util.HashSet<>();
+        while (seen.size() < 3000) {
+            seen.add(generateString(characters, 1 + rng.nextInt(8)));
+        }
+        String[] s = seen.toArray(new String[0]);
+        double[] d = new double[s.length];
+        for (int i = 0; i < s.length; i++) {
+            d[i] = i;
+        }
+        Autocomplete single = new Autocomplete(s, d);
+        ShardedAutocomplete sharded = new ShardedAutocomplete(s, d, 4);
+        assertEquals(4, sharded.shardCount());
+        // a pool of its own scatters queries to the shards even on one core;
+        // the common pool may have too few threads and merge lazily instead
+        java.util.concurrent.ForkJoinPool pool = new java.util.concurrent.ForkJoinPool(4);
+        ShardedAutocomplete parallel = new ShardedAutocomplete(s, d, 4, false, pool);
+        for (int round = 0; round < 2; round++) {
+            for (String prefix : new String[] {"", "a", "ab", "c d", "dddd", "x"}) {
+                for (int k : new int[] {1, 5, 50, 5000}) {
+                    assertEquals(toList(single.topMatches(prefix, k)), sharded.topMatches(prefix, k));
+                    assertEquals(toList(single.topMatches(prefix, k)), parallel.topMatches(prefix, k));
+                }
+                assertEquals(single.topMatch(prefix), sharded.topMatch(prefix));
+                assertEquals(single.topMatch(prefix), parallel.topMatch(prefix));
+            }
+            for (int i = 0; i < s.length; i += 37) {
+                assertTrue(single.weightOf(s[i]) == sharded.weightOf(s[i]));
+            }
+            // reweight and remove a few terms, then check again
+            for (int i = round; i < s.length; i += 101) {
+                if (i % 2 == 0) {
+                    assertTrue(single.remove(s[i]));
+                    assertTrue(sharded.remove(s[i]));
+                    assertTrue(parallel.remove(s[i]));
+                } else {
+                    assertTrue(single.updateWeight(s[i], 10000.0 + i));
+                    assertTrue(sharded.updateWeight(s[i], 10000.0 + i));
+                    assertTrue(parallel.updateWeight(s[i], 10000.0 + i));
+                }
+            }
+        }
+        assertFalse(sharded.remove("not a term"));
+        pool.shutdown();
+
+        String[] dup = s.clone();
+        dup[1] = dup[0];
+        try {
+            new ShardedAutocomplete(dup, d, 3);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("duplicate terms", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testAutocompleteServer() throws java.io.IOException {
+        String characters = "abc d";
+        java.util.HashSet<String> seen = new java.util.HashSet<>();
+        Random rng = new Random(20);
+        while (seen.size() < 3000) {
+            seen.add(generateString(characters, 1 + rng.nextInt(8)));
+        }
+        String[] s = seen.toArray(new String[0]);
+        double[] d = new double[s.length];
+        for (int i = 0; i < s.length; i++) {
+            d[i] = i;
+        }
+        Autocomplete test = new Autocomplete(s, d);
+        String[] prefixes = {"", "a", "ab", "c d", "dddd", "x"};
+        int[] ks = {0, 1, 50, 3000, 5};
+        long answerBytes = 0;
+        for (int r = 0; r < 600; r++) {
+            for (String term : test.topMatches(prefixes[r % prefixes.length], ks[r % ks.length])) {
+                answerBytes += (test.weightOf(term) + "\t" + term + "\n").length();
+            }
+        }
+        assertTrue(answerBytes > 2 * AutocompleteServer.HIGH_WATER);
+
+        try (AutocompleteServer server = new AutocompleteServer(test, 0, 2)) {
+            server.start();
+            for (int c = 0; c < 2; c++) {
+                try (java.net.Socket socket = new java.net.Socket("localhost", server.getPort())) {
+                    // pipeline every request and half-close before reading any
+                    // answer; the answers run well past the server's HIGH_WATER
+                    // backlog, so requests are still buffered when it sees the
+                    // end of input, and every one must still be answered
+                    StringBuilder requests = new StringBuilder();
+                    for (int r = 0; r < 600; r++) {
+                        requests.append(ks[r % ks.length]).append('\t')
+                                .append(prefixes[r % prefixes.length]).append(r % 2 == 0 ? "\n" : "\r\n");
+                    }
+                    requests.append("x\n").append("-1\ta\n").append("2\tb\n");
+                    java.io.OutputStream os = socket.getOutputStream();
+                    os.write(requests.toString().getBytes(java.nio.charset.StandardCharsets.UTF_8));
+                    os.flush();
+                    socket.shutdownOutput();
+
+                    java.io.BufferedReader reader = new java.io.BufferedReader(new java.io.InputStreamReader(
+                        socket.getInputStream(), java.nio.charset.StandardCharsets.UTF_8));
+                    for (int r = 0; r < 600; r++) {
+                        for (String term : test.topMatches(prefixes[r % prefixes.length], ks[r % ks.length])) {
+                            assertEquals(test.weightOf(term) + "\t" + term, reader.readLine());
+                        }
+                        assertEquals("", reader.readLine());
+                    }
+                    assertTrue(reader.readLine().startsWith("ERR"));
+                    assertEquals("", reader.readLine());
+                    assertTrue(reader.readLine().startsWith("ERR"));
+                    assertEquals("", reader.readLine());
+                    for (String term : test.topMatches("b", 2)) {
+                        assertEquals(test.weightOf(term) + "\t" + term, reader.readLine());
+                    }
+                    assertEquals("", reader.readLine());
+                    // the server closes once a finished client is answered
+                    assertEquals(null, reader.readLine());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testAutocompleteRouter() throws java.io.IOException {
+        String characters = "abc d";
+        Random rng = new Random(21);
+        java.util.HashSet<String> seen = new java.util.HashSet<>();
+        while (seen.size() < 3000) {
+            seen.add(generateString(characters, 1 + rng.nextInt(8)));
+        }
+        String[] s = seen.toArray(new String[0]);
+        double[] d = new double[s.length];
+        java.io.File dir = java.nio.file.Files.createTempDirectory("partitions").toFile();
+        java.io.File dict = new java.io.File(dir, "dict.txt");
+        try (java.io.PrintWriter out = new java.io.PrintWriter(dict, "UTF-8")) {
+            out.println(s.length);
+            for (int i = 0; i < s.length; i++) {
+                d[i] = i;
+                out.println(d[i] + "\t" + s[i]);
+            }
+        }
+        Autocomplete single = new Autocomplete(s, d);
+
+        String[] bounds = AutocompletePartitioner.partition(dict.getPath(), 4, dir);
+        assertEquals(4, bounds.length);
+        assertEquals("", bounds[0]);
+        AutocompleteServer[] workers = new AutocompleteServer[bounds.length];
+        java.net.InetSocketAddress[] addresses = new java.net.InetSocketAddress[bounds.length];
+        int total = 0;
+        for (int p = 0; p < bounds.length; p++) {
+            Autocomplete part = Autocomplete.open(new java.io.File(dir, "part-" + p + ".txt").getPath());
+            for (String term : part.topMatches("", s.length)) {
+                assertEquals(p, AutocompletePartitioner.owner(bounds, term));
+                total++;
+            }
+            workers[p] = new AutocompleteServer(part, 0, 1);
+            workers[p].start();
+            addresses[p] = new java.net.InetSocketAddress("localhost", workers[p].getPort());
+        }
+        assertEquals(s.length, total);
+
+        try (AutocompleteRouter router = new AutocompleteRouter(bounds, addresses)) {
+            for (String prefix : new String[] {"", "a", "b", bounds[2], bounds[2].substring(0, 1),
+                                               "c d", "dddd", "x"}) {
+                for (int k : new int[] {0, 1, 5, 50, 5000}) {
+                    assertEquals(toList(single.topMatches(prefix, k)), router.topMatches(prefix, k));
+                }
+            }
+            assertEquals(new java.util.ArrayList<String>(), router.topMatches("a\rb", 5));
+
+            // served, a request the source throws on gets an ERR line and
+            // leaves the event loop answering
+            java.util.function.BiFunction<String, Integer, Iterable<Autocomplete.Match>> source =
+                (prefix, k) -> {
+                    if (prefix.equals("boom")) {
+                        throw new IllegalStateException("boom");
+                    }
+                    return router.weightedMatches(prefix, k);
+                };
+            try (AutocompleteServer server = new AutocompleteServer(source, 0, 1, 2)) {
+                server.start();
+                for (String request : new String[] {"5\tboom\n", "5\ta\rb\n", "5\ta\n"}) {
+                    try (java.net.Socket socket = new java.net.Socket("localhost", server.getPort())) {
+                        socket.setSoTimeout(10000);
+                        socket.getOutputStream().write(request.getBytes(java.nio.charset.StandardCharsets.UTF_8));
+                        java.io.BufferedReader reader = new java.io.BufferedReader(new java.io.InputStreamReader(
+                            socket.getInputStream(), java.nio.charset.StandardCharsets.UTF_8));
+                        if (request.contains("boom")) {
+                            assertEquals("ERR boom", reader.readLine());
+                        } else if (request.contains("a\n")) {
+                            for (String term : single.topMatches("a", 5)) {
+                                assertEquals(single.weightOf(term) + "\t" + term, reader.readLine());
+                            }
+                        }
+                        assertEquals("", reader.readLine());
+                    }
+                }
+            }
+
+            for (AutocompleteServer worker : workers) {
+                worker.close();
+            }
+            try {
+                router.topMatches("", 1);
+                fail();
+            } catch (java.io.UncheckedIOException e) {
+                // workers are gone
+            }
+        }
+    }
+
+    /** Check that a hung worker times out without stalling other clients of
+     *  a served router, and that a malformed worker answer is an error
+     */
+    @Test
+    public void testAutocompleteRouterFailures() throws Exception {
+        Autocomplete part = new Autocomplete(new String[] {"apple", "avocado"}, new double[] {2.0, 1.0});
+        try (java.net.ServerSocket hung = new java.net.ServerSocket(0);
+             java.net.ServerSocket garbled = new java.net.ServerSocket(0);
+             AutocompleteServer good = new AutocompleteServer(part, 0, 1)) {
+            good.start();
+            // hung is never accepted from, so it connects but never answers;
+            // garbled answers with a line that is not weight\tterm
+            Thread garbler = new Thread(() -> {
+                try (java.net.Socket socket = garbled.accept()) {
+                    socket.getOutputStream().write("heavy\tterm\n\n".getBytes("UTF-8"));
+                    Thread.sleep(60000);
+                } catch (Exception e) {
+                    // test over
+                }
+            });
+            garbler.setDaemon(true);
+            garbler.start();
+            java.net.InetSocketAddress[] workers = {
+                new java.net.InetSocketAddress("localhost", good.getPort()),
+                new java.net.InetSocketAddress("localhost", hung.getLocalPort()),
+                new java.net.InetSocketAddress("localhost", garbled.getLocalPort())};
+            try (AutocompleteRouter router = new AutocompleteRouter(new String[] {"", "m", "t"}, workers, 1000)) {
+                try {
+                    router.topMatches("t", 5);
+                    fail();
+                } catch (java.io.UncheckedIOException e) {
+                    assertTrue(e.getMessage().contains("malformed"));
+                }
+                try (AutocompleteServer server = new AutocompleteServer(router::weightedMatches, 0, 1, 2);
+                     java.net.Socket slow = new java.net.Socket("localhost", server.getPort());
+                     java.net.Socket fast = new java.net.Socket("localhost", server.getPort())) {
+                    server.start();
+                    slow.setSoTimeout(10000);
+                    fast.setSoTimeout(10000);
+                    java.io.BufferedReader slowIn = new java.io.BufferedReader(new java.io.InputStreamReader(
+                        slow.getInputStream(), java.nio.charset.StandardCharsets.UTF_8));
+                    java.io.BufferedReader fastIn = new java.io.BufferedReader(new java.io.InputStreamReader(
+                        fast.getInputStream(), java.nio.charset.StandardCharsets.UTF_8));
+                    long start = System.nanoTime();
+                    slow.getOutputStream().write("5\tm\n".getBytes("UTF-8"));
+                    fast.getOutputStream().write("5\ta\n".getBytes("UTF-8"));
+                    // both connections share the one event loop
+                    assertEquals("2.0\tapple", fastIn.readLine());
+                    assertEquals("1.0\tavocado", fastIn.readLine());
+                    assertEquals("", fastIn.readLine());
+                    assertTrue(System.nanoTime() - start < 900000000L);
+                    assertTrue(slowIn.readLine().startsWith("ERR"));
+                    assertEquals("", slowIn.readLine());
+                }
+            }
+        }
+    }
+
+    /* Helper method collecting an iterable of terms */
+    public java.util.List<String> toList(Iterable<String> terms) {
+        java.util.List<String> retVal = new java.util.ArrayList<>();
+        for (String term : terms) {
+            retVal.add(term);
+        }
+        return retVal;
+    }
+
+    /* Helper method returning the fewest edits turning prefix into a prefix of term */
+    public int prefixDistance(String prefix, String term) {
+        if (term.equals("removed")) {
+            return Integer.MAX_VALUE;
+        }
+        int[] row = new int[prefix.length() + 1];
+        for (int j = 0; j < row.length; j++) {
+            row[j] = j;
+        }
+        int best = row[prefix.length()];
+        for (int i = 0; i < term.length(); i++) {
+            int diag = row[0];
+            row[0] = i + 1;
+            for (int j = 1; j < row.length; j++) {
+                int up = row[j];
+                row[j] = Math.min(Math.min(up, row[j - 1]) + 1,
+                    diag + (prefix.charAt(j - 1) == term.charAt(i) ? 0 : 1));
+                diag = up;
+            }
+            best = Math.min(best, row[prefix.length()]);
+        }
+        return best;
+    }
+
+    /* Helper method returning every term starting with prefix by descending weight */
+    public java.util.List<String> bruteForce(String[] s, double[] d, String prefix) {
+        java.util.List<Integer> ids = new java.util.ArrayList<>();
+        for (int i = 0; i < s.length; i++) {
+            if (s[i].startsWith(prefix)) {
+                ids.add(i);
+            }
+        }
+        ids.sort((a, b) -> Double.compare(d[b], d[a]));
+        java.util.List<String> retVal = new java.util.ArrayList<>();
+        for (int i : ids) {
+            retVal.add(s[i]);
+        }
+        return retVal;
+    }
+
     /* Helper method to generate random strings  -- thanks stackoverflow */
     public String generateString(String characters, int length) {
         char[] text = new char[length];
@@ -1,7 +1,6 @@
 import org.junit.Test;
 import ucb.junit.textui;
 
-import java.util.Hashtable;
 import java.util.Random;
 
 import static org.junit.Assert.*;
@@ -175,22 +174,16 @@ public class TestTrie {
     }
 
     /**
-     * test to see if asinsert inserts elements into trie correctly
-     * asinsert is to insert elements into trie specifically used for AlphabetSort
+     * test to see if insert on a Trie over an alphabet, as AlphabetSort
+     * builds, inserts elements into trie correctly
      */
     @Test
     public void testASInsert() {
-        Trie test = new Trie();
-        Hashtable<Character, Integer> alph = new Hashtable<>();
-        alph.put('!', 0);
-        alph.put('@', 1);
-        alph.put('#', 2);
-        alph.put('$', 3);
-        alph.put('%', 4);
+        Trie test = new Trie("!@#$%");
 
-        test.asinsert("%$#@!", alph, alph.size());
-        test.asinsert("###", alph, alph.size());
-        test.asinsert("@$!!!!", alph, alph.size());
+        test.insert("%$#@!");
+        test.insert("###");
+        test.insert("@$!!!!");
 
         assertEquals(true, test.find("%$#@!", true));
         assertEquals(true, test.find("%$#@!", false));
@@ -207,6 +200,249 @@ public class TestTrie {
         assertEquals(false, test.find("@$!", true));
     }
 
+    /**
+     * test that LineReader splits lines the same from a stream and from a
+     * mapped file, across buffer refills and window remaps, and that
+     * AlphabetSort sorts a named file as it sorts stdin
+     */
+    @Test
+    public void testLineReader() throws java.io.IOException {
+        java.util.List<String> lines = new java.util.ArrayList<>();
+        StringBuilder text = new StringBuilder();
+        Random rng = new Random(22);
+        for (int i = 0; i < 2000; i++) {
+            String line = generateString("ab çé€", rng.nextInt(i % 100 == 0 ? 100000 : 30));
+            lines.add(line);
+            text.append(line).append(i % 3 == 0 ? "\r\n" : "\n");
+        }
+        lines.add("no line end");
+        text.append("no line end");
+        byte[] bytes = text.toString().getBytes(java.nio.charset.StandardCharsets.UTF_8);
+        java.io.File file = java.io.File.createTempFile("lines", ".txt");
+        file.deleteOnExit();
+        java.nio.file.Files.write(file.toPath(), bytes);
+
+        LineReader[] readers = {new LineReader(new java.io.ByteArrayInputStream(bytes)),
+            new LineReader(file.getPath()), new LineReader(file.getPath(), 4096)};
+        for (LineReader reader : readers) {
+            for (String line : lines) {
+                assertEquals(line, reader.readLine());
+            }
+            assertEquals(null, reader.readLine());
+            assertEquals(null, reader.readLine());
+            reader.close();
+        }
+        assertEquals(null, new LineReader(new java.io.ByteArrayInputStream(new byte[0])).readLine());
+
+        String input = "zyxcba\r\nabc\nzzz\nqqq\nc\ncab\nzyx\nx";
+        java.nio.file.Files.write(file.toPath(), input.getBytes(java.nio.charset.StandardCharsets.UTF_8));
+        java.io.PrintStream stdout = System.out;
+        java.io.InputStream stdin = System.in;
+        java.io.ByteArrayOutputStream fromFile = new java.io.ByteArrayOutputStream();
+        java.io.ByteArrayOutputStream fromStdin = new java.io.ByteArrayOutputStream();
+        try {
+            System.setOut(new java.io.PrintStream(fromFile));
+            AlphabetSort.main(new String[] {file.getPath()});
+            System.setOut(new java.io.PrintStream(fromStdin));
+            System.setIn(new java.io.ByteArrayInputStream(input.getBytes(java.nio.charset.StandardCharsets.UTF_8)));
+            AlphabetSort.main(new String[0]);
+        } finally {
+            System.setOut(stdout);
+            System.setIn(stdin);
+        }
+        assertEquals("zzz\nzyx\nx\nc\ncab\nabc\n", fromFile.toString());
+        assertEquals(fromFile.toString(), fromStdin.toString());
+    }
+
+    /**
+     * test that the external sort prints what the Trie sort prints, with
+     * enough runs to need more than one merge pass, and cleans up its runs
+     */
+    @Test
+    public void testExternalAlphabetSort() throws java.io.IOException {
+        StringBuilder input = new StringBuilder("dbqca\n");
+        for (int i = 0; i < 3000; i++) {
+            // repeats, and words with chars outside the alphabet
+            input.append(generateString("abcdq", 1 + i % 6)).append('\n');
+            if (i % 10 == 0) {
+                input.append("abz\n");
+            }
+        }
+        byte[] bytes = input.toString().getBytes(java.nio.charset.StandardCharsets.UTF_8);
+        java.io.File tmp = java.nio.file.Files.createTempDirectory("runs").toFile();
+        tmp.deleteOnExit();
+
+        java.io.PrintStream stdout = System.out;
+        java.io.InputStream stdin = System.in;
+        java.io.ByteArrayOutputStream trie = new java.io.ByteArrayOutputStream();
+        java.io.ByteArrayOutputStream external = new java.io.ByteArrayOutputStream();
+        try {
+            System.setOut(new java.io.PrintStream(trie));
+            System.setIn(new java.io.ByteArrayInputStream(bytes));
+            AlphabetSort.main(new String[0]);
+            System.setOut(new java.io.PrintStream(external));
+            System.setIn(new java.io.ByteArrayInputStream(bytes));
+            AlphabetSort.main(new String[] {"-memory", "1", "-tmpdir", tmp.getPath()});
+        } finally {
+            System.setOut(stdout);
+            System.setIn(stdin);
+        }
+        assertEquals(trie.toString(), external.toString());
+        assertFalse(trie.toString().contains("z"));
+
+        LineReader in = new LineReader(new java.io.ByteArrayInputStream(bytes));
+        in.readLine();
+        java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
+        ExternalAlphabetSort sorter = new ExternalAlphabetSort("dbqca", 1000, tmp);
+        assertEquals(3300, sorter.sort(in, new AlphabetSort.LineWriter(out)));
+        assertTrue(sorter.runCount() > ExternalAlphabetSort.MAX_FAN_IN);
+        assertEquals(trie.toString(), out.toString());
+        assertEquals(0, tmp.list().length);
+
+        try {
+            new ExternalAlphabetSort("abca", 2000, tmp);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("letter appears multiple times", e.getMessage());
+        }
+    }
+
+    /**
+     * test that the radix engine prints what the Trie engine prints, for a
+     * small alphabet, an alphabet larger than most buckets, and words with
+     * long shared prefixes
+     */
+    @Test
+    public void testAlphabetRadixSort() throws java.io.IOException, InterruptedException {
+        StringBuilder wide = new StringBuilder();
+        for (char c = 'A'; c < 'A' + 300; c++) {
+            wide.append(c);
+        }
+        String[] alphabets = {"dbqca", wide.toString()};
+        for (String alphabet : alphabets) {
+            StringBuilder input = new StringBuilder(alphabet).append('\n');
+            for (int i = 0; i < 20000; i++) {
+                input.append(generateString(alphabet.substring(0, Math.min(alphabet.length(), 60)),
+                                            1 + i % 7)).append('\n');
+                if (i % 10 == 0) {
+                    input.append("abz\n");
+                }
+            }
+            String prefix = generateString(alphabet, 500);
+            for (int i = 0; i < 40; i++) {
+                input.append(prefix).append(generateString(alphabet, i % 3)).append('\n');
+            }
+            String trie = alphabetSort(input.toString());
+            assertEquals(trie, alphabetSort(input.toString(), "-radix"));
+            // "abz" is dropped unless z is a letter
+            assertEquals(alphabet.indexOf('z') >= 0, trie.contains("abz"));
+        }
+
+        AlphabetRadixSort sorter = new AlphabetRadixSort("cba");
+        String[] words = {"a", "ab", "c", "", "ba", "a", "cab", "bc"};
+        sorter.sort(words);
+        assertArrayEquals(new String[] {"", "c", "cab", "bc", "ba", "a", "a", "ab"}, words);
+        assertEquals(java.util.Arrays.asList("c", "b", "a"),
+                     sorter.sortDistinct(java.util.Arrays.asList("a", "b", "c", "b")));
+        assertFalse(sorter.inAlphabet("abd"));
+
+        // nested words go one level deeper per word, without recursing: a
+        // recursive sort overflows a 256K stack at 1000 levels
+        // in order: "", "a", "aa", ..., then "a..ab", ..., "ab", "b"
+        int depth = 2000;
+        String[] deep = new String[2 * depth];
+        StringBuilder nested = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            deep[i] = nested.toString();
+            deep[2 * depth - 1 - i] = nested + "b";
+            nested.append('a');
+        }
+        String[] shuffled = deep.clone();
+        java.util.Collections.shuffle(java.util.Arrays.asList(shuffled), new java.util.Random(24));
+        Throwable[] thrown = new Throwable[1];
+        Thread small = new Thread(null, () -> {
+            try {
+                new AlphabetRadixSort("ab").sort(shuffled);
+            } catch (Throwable e) {
+                thrown[0] = e;
+            }
+        }, "small-stack", 256 * 1024);
+        small.start();
+        small.join();
+        assertNull(thrown[0]);
+        assertTrue(java.util.Arrays.equals(deep, shuffled));
+    }
+
+    /**
+     * test that a Trie over an alphabet finds words by their chars and lists
+     * them in alphabet order, however long
+     */
+    @Test
+    public void testForEachWord() {
+        Trie test = new Trie("%$#@!");
+        test.insert("%$#@!");
+        test.insert("###");
+        test.insert("@$!!!!");
+        test.insert("#");
+        test.insert("###");
+        assertEquals(true, test.find("%$#@!", true));
+        assertEquals(true, test.find("@$!", false));
+        assertEquals(false, test.find("@$!", true));
+        assertEquals(false, test.find("a", false));
+
+        java.util.List<String> words = new java.util.ArrayList<>();
+        test.forEachWord(words::add);
+        assertEquals(java.util.Arrays.asList("%$#@!", "#", "###", "@$!!!!"), words);
+
+        // deeper than the call stack, and past where depth * alphabet size
+        // overflows an int
+        StringBuilder alphabet = new StringBuilder();
+        for (char c = 'A'; c < 'A' + 20000; c++) {
+            alphabet.append(c);
+        }
+        Trie deep = new Trie(alphabet.toString());
+        String[] deepWords = new String[50];
+        for (int i = 0; i < deepWords.length; i++) {
+            deepWords[i] = generateString(alphabet.substring(0, 3), 110000 + i % 3)
+                + generateString(alphabet.toString(), 2);
+            deep.insert(deepWords[i]);
+        }
+        AlphabetRadixSort sorter = new AlphabetRadixSort(alphabet.toString());
+        java.util.List<String> expected = sorter.sortDistinct(java.util.Arrays.asList(deepWords));
+        java.util.List<String> actual = new java.util.ArrayList<>();
+        deep.forEachWord(actual::add);
+        assertEquals(expected, actual);
+
+        try {
+            test.insert("abc");
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("String has a char outside the alphabet.", e.getMessage());
+        }
+        try {
+            test.acInsert("###", 1.0);
+            fail();
+        } catch (IllegalStateException e) {
+            return;
+        }
+    }
+
+    /* helper method running AlphabetSort on input with the given options */
+    public String alphabetSort(String input, String... options) throws java.io.IOException {
+        java.io.PrintStream stdout = System.out;
+        java.io.InputStream stdin = System.in;
+        java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
+        try {
+            System.setOut(new java.io.PrintStream(out));
+            System.setIn(new java.io.ByteArrayInputStream(input.getBytes(java.nio.charset.StandardCharsets.UTF_8)));
+            AlphabetSort.main(options);
+        } finally {
+            System.setOut(stdout);
+            System.setIn(stdin);
+        }
+        return out.toString();
+    }
+
     /**
      * test to see if acInsert inserts elements into trie correctly
      * acInsert is to insert elements into trie specifically used for Autocomplete
@@ -233,6 +469,73 @@ public class TestTrie {
         assertEquals(false, test.find(dict[3].substring(0, 3), true));
     }
 
+    /**
+     * test that nodes keep working as they switch between the sparse child
+     * layout, the dense table, and back to sparse once labels span too wide
+     */
+    @Test
+    public void testHighFanout() {
+        Trie test = new Trie();
+        // 40 children under "x" forces the dense table
+        for (char c = 'A'; c < 'A' + 40; c++) {
+            test.insert("x" + c);
+        }
+        for (char c = 'A'; c < 'A' + 40; c++) {
+            assertEquals(true, test.find("x" + c, true));
+        }
+        assertEquals(false, test.find("x@", false));
+
+        // far-away label falls back to the sparse layout
+        test.insert("x中");
+        test.insert("x!");
+        assertEquals(true, test.find("x中", true));
+        assertEquals(true, test.find("x!", true));
+        for (char c = 'A'; c < 'A' + 40; c++) {
+            assertEquals(true, test.find("x" + c, true));
+        }
+
+        Trie.TrieNode x = test.root.getChild('x');
+        assertEquals(42, x.childCount());
+        for (int i = 1; i < x.childCount(); i++) {
+            assertTrue(x.labelAt(i - 1) < x.labelAt(i));
+        }
+    }
+
+    /**
+     * test that a path-compressed trie splits edges correctly and finds
+     * prefixes that end in the middle of an edge
+     */
+    @Test
+    public void testCompressedFind() {
+        Trie test = new Trie(true);
+        test.acInsert("Pray for Harambe", 400.0);
+        test.acInsert("Pray for preys", 100.0);
+        test.acInsert("Pray", 16.0);
+        test.acInsert("P", 19.0);
+
+        // one edge from root covers "P", one covers "ray", one "for "
+        Trie.TrieNode p = test.root.getChild('P');
+        assertEquals(0, p.getTail().length);
+        assertEquals("ay", new String(p.getChild('r').getTail()));
+        assertEquals(400.0, p.getMaxPriority(), 0.0);
+
+        assertEquals(true, test.find("P", true));
+        assertEquals(true, test.find("Pray", true));
+        assertEquals(true, test.find("Pray for Harambe", true));
+        assertEquals(true, test.find("Pray for preys", true));
+        assertEquals(true, test.find("Pray fo", false));
+        assertEquals(false, test.find("Pray fo", true));
+        assertEquals(true, test.find("Pray for Har", false));
+        assertEquals(false, test.find("Pray for Har", true));
+        assertEquals(false, test.find("Pray for Hz", false));
+        assertEquals(false, test.find("Pray for Harambe!", false));
+        assertEquals(false, test.find("Pr", true));
+
+        test.insert("Pray for me");
+        assertEquals(true, test.find("Pray for me", true));
+        assertEquals(true, test.find("Pray for preys", true));
+    }
+
     /* helper method for creating random strings - thanks StackOverflow */
     public String generateString(String characters, int length) {
         char[] text = new char[length];
@@ -1,42 +1,195 @@
+import java.util.Arrays;
 import java.util.HashSet;
-import java.util.Hashtable;
+import java.util.function.Consumer;
 
 /**
  * Prefix-Trie. Supports linear time find() and insert().
  * Should support determining whether a word is a full word in the
  * Trie or a prefix.
  *
+ * A path-compressed Trie collapses chains of single-child, non-word nodes
+ * into one node whose edge is its label plus a tail of further characters.
+ *
+ * A Trie over an alphabet labels each edge with its character's position in
+ * the alphabet rather than the character itself, so children, which are
+ * kept ordered by label, come in alphabet order and forEachWord lists the
+ * words in that order.
+ *
+ * A Trie is not thread-safe: inserts must not overlap with each other or with
+ * reads. Separate Tries share no state and may be built on separate threads.
+ *
  * @author
  */
 public class Trie {
     TrieNode root;          // sentinel node mapping to all starting chars
-    static int depth;
     HashSet<String> words;  // contains all inserted words
+    final boolean compressed; // radix mode: edges may span several chars
+    private final int[] rank; // edge label of each char, -1 if not in the
+                              // alphabet; null to label edges by char
 
     public static class TrieNode {
+        // Adaptive child layout: up to SPARSE_MAX children live in a sorted
+        // label array searched in place; above that, children move into a
+        // dense table indexed by (c - base) as long as the labels span at most
+        // DENSE_MAX_SPAN characters. Leaves allocate nothing.
+        static final int SPARSE_MAX = 16;
+        static final int DENSE_MAX_SPAN = 256;
+        private static final char[] NO_LABELS = new char[0];
+        private static final TrieNode[] NO_CHILDREN = new TrieNode[0];
+
         private boolean endOfWord;     // indicates nodes that are end of word
-        private Hashtable<Character, TrieNode> suffix;
-        private int priority;          // depth priority for alphSort
+        private char[] labels;         // sorted child labels, always kept
+        private TrieNode[] children;   // parallel to labels, or dense table if dense
+        private boolean dense;         // children indexed by (c - base)
+        private char[] tail;           // edge chars after the label (compressed Trie)
+        private char base;             // label stored at children[0] when dense
+        private int size;              // number of children
         private double priority2;      // word weight, 0.0 if not endOfWord (AC)
         private double maxPriority;    // current max priority connected to node (AC)
         private String prev;           // null if not endOfWord node, else contains
                                        // word string
         public TrieNode() {
-            priority = 0;
             priority2 = 0.0;
             maxPriority = 0.0;
             endOfWord = false;
-            suffix = new Hashtable<>();
+            labels = NO_LABELS;
+            children = NO_CHILDREN;
+            tail = NO_LABELS;
         }
 
         // Temp node used for autocomplete priority DFS
         public TrieNode(double p2, String s) {
+            this();
             endOfWord = true;
             priority2 = p2;
             maxPriority = p2;
             prev = s;
         }
 
+        /** Returns the child reached by character c, or null if there is none
+         *
+         *  Runtime: O(1) dense, O(log F) sparse - F = number of children
+         * @param c - edge character
+         * @return child node or null
+         */
+        public TrieNode getChild(char c) {
+            if (dense) {
+                int i = c - base;
+                return i >= 0 && i < children.length ? children[i] : null;
+            }
+            int i = indexOf(c);
+            return i >= 0 ? children[i] : null;
+        }
+
+        /** Adds child under character c, replacing any existing child
+         *
+         *  Runtime: O(F) amortized - F = number of children
+         * @param c - edge character
+         * @param child - node to link
+         */
+        public void putChild(char c, TrieNode child) {
+            int i = indexOf(c);
+            if (i >= 0) {
+                children[dense ? c - base : i] = child;
+                return;
+            }
+            i = -(i + 1);
+            if (size == labels.length) {
+                labels = Arrays.copyOf(labels, Math.max(1, size * 2));
+            }
+            System.arraycopy(labels, i, labels, i + 1, size - i);
+            labels[i] = c;
+            size++;
+
+            if (dense) {
+                if (!placeDense(c, child)) {
+                    toSparse();
+                    insertSparse(size - 1, i, child);
+                }
+            } else {
+                insertSparse(size - 1, i, child);
+                if (size > SPARSE_MAX && labels[size - 1] - labels[0] < DENSE_MAX_SPAN) {
+                    toDense();
+                }
+            }
+        }
+
+        /** Number of children of this node */
+        public int childCount() {
+            return size;
+        }
+
+        /** Label of the i-th child, children are ordered by label */
+        public char labelAt(int i) {
+            return labels[i];
+        }
+
+        /** The i-th child, children are ordered by label */
+        public TrieNode childAt(int i) {
+            return dense ? children[labels[i] - base] : children[i];
+        }
+
+        // Position of c in labels, or -(insertion point + 1)
+        private int indexOf(char c) {
+            return Arrays.binarySearch(labels, 0, size, c);
+        }
+
+        // Shift sparse children right of i and store child there; n = old size
+        private void insertSparse(int n, int i, TrieNode child) {
+            if (n == children.length) {
+                children = Arrays.copyOf(children, Math.max(1, n * 2));
+            }
+            System.arraycopy(children, i, children, i + 1, n - i);
+            children[i] = child;
+        }
+
+        // Stores child in the dense table, growing it; false if span too wide
+        private boolean placeDense(char c, TrieNode child) {
+            char lo = labels[0];
+            int span = labels[size - 1] - lo + 1;
+            if (span > DENSE_MAX_SPAN) {
+                return false;
+            }
+            if (lo != base || span > children.length) {
+                TrieNode[] table = new TrieNode[span];
+                System.arraycopy(children, 0, table, base - lo, children.length);
+                children = table;
+                base = lo;
+            }
+            children[c - base] = child;
+            return true;
+        }
+
+        private void toDense() {
+            base = labels[0];
+            TrieNode[] table = new TrieNode[labels[size - 1] - base + 1];
+            for (int i = 0; i < size; i++) {
+                table[labels[i] - base] = children[i];
+            }
+            children = table;
+            dense = true;
+        }
+
+        // labels already contains the new label; the new child is not yet linked
+        private void toSparse() {
+            TrieNode[] list = new TrieNode[labels.length];
+            int j = 0;
+            for (int i = 0; i < size; i++) {
+                int d = labels[i] - base;
+                if (d >= 0 && d < children.length && children[d] != null) {
+                    list[j++] = children[d];
+                }
+            }
+            children = list;
+            dense = false;
+        }
+
+        /** Characters on the edge into this node after its label, empty
+         *  unless the Trie is path-compressed */
+        public char[] getTail() {
+            return tail;
+        }
+
         /** Getters/Setters for TrieNode */
         public void changeEndOfWord() {
             endOfWord = true;
@@ -46,16 +199,12 @@ public class Trie {
             return endOfWord;
         }
 
-        public int getPriority() {
-            return priority;
-        }
-
         public String getPrev() {
             return prev;
         }
 
-        public void setPriority(int i) {
-            priority = i;
+        public void setPrev(String s) {
+            prev = s;
         }
 
         public double getPriority2() {
@@ -79,15 +228,48 @@ public class Trie {
         public double getDepthPriority() {
             return -maxPriority;
         }
-
-        public Hashtable<Character, TrieNode> getSuffix() {
-            return suffix;
-        }
     }
 
     public Trie() {
+        this(false);
+    }
+
+    /** Creates an empty Trie, path-compressed if compressed is true. */
+    public Trie(boolean compressed) {
         root = new TrieNode();
         words = new HashSet<>();
+        this.compressed = compressed;
+        rank = null;
+    }
+
+    /** Creates an empty uncompressed Trie over alphabet, whose words may
+     *  only use its chars and are listed by forEachWord in alphabet order.
+     *  acInsert is not supported.
+     *
+     * @param alphabet - every char allowed in a word, in sort order
+     */
+    public Trie(String alphabet) {
+        if (alphabet == null) {
+            throw new IllegalArgumentException("alphabet is null.");
+        }
+        root = new TrieNode();
+        words = new HashSet<>();
+        compressed = false;
+        rank = new int[Character.MAX_VALUE + 1];
+        Arrays.fill(rank, -1);
+        for (int i = 0; i < alphabet.length(); i++) {
+            char c = alphabet.charAt(i);
+            if (rank[c] >= 0) {
+                throw new IllegalArgumentException("letter appears multiple times");
+            }
+            rank[c] = i;
+        }
+    }
+
+    // Edge label of c: c itself, or its alphabet position; -1 if c is not
+    // in the alphabet
+    private int label(char c) {
+        return rank == null ? c : rank[c];
     }
 
     /** Searches a Trie for a given string, returns true if found
@@ -110,12 +292,23 @@ public class Trie {
         // Iterate through the tree checking for letters
         TrieNode currTN = root;
         for (int i = 0; i < s.length(); i++) {
-            char c = s.charAt(i);
+            int c = label(s.charAt(i));
+            currTN = c < 0 ? null : currTN.getChild((char) c);
             // Return false when letter is not contained
-            if (!currTN.getSuffix().containsKey(c)) {
+            if (currTN == null) {
                 return false;
             }
-            currTN = currTN.getSuffix().get(c);
+            // Compare the rest of a compressed edge; s may end inside it
+            char[] tail = currTN.tail;
+            for (int j = 0; j < tail.length; j++) {
+                if (i + 1 + j == s.length()) {
+                    return !isFullWord;
+                }
+                if (tail[j] != s.charAt(i + 1 + j)) {
+                    return false;
+                }
+            }
+            i += tail.length;
         }
 
         // TrieNode's endOfWord must be true if isFullWord is true
@@ -139,64 +332,63 @@ public class Trie {
             throw new IllegalArgumentException("String is empty.");
         }
 
+        if (compressed) {
+            TrieNode end = compressedPath(s, 0.0);
+            end.changeEndOfWord();
+            end.prev = s;
+            return;
+        }
         TrieNode currTN = root;
         for (int i = 0; i < s.length(); i++) {
-            char c = s.charAt(i);
-            Hashtable<Character, TrieNode> suffix = currTN.getSuffix();
+            char c = edge(s, i);
+            TrieNode next = currTN.getChild(c);
             // Move to specific character's tree node if already initiated
             // else create a new tree node for that character
-            if (suffix.containsKey(c)) {
-                currTN = suffix.get(c);
-            } else {
-                suffix.put(c, new TrieNode());
-                currTN = suffix.get(c);
+            if (next == null) {
+                next = new TrieNode();
+                currTN.putChild(c, next);
             }
+            currTN = next;
         }
         currTN.changeEndOfWord();
+        currTN.prev = s;
     }
 
+    // Edge label of s.charAt(i), which must be in the alphabet
+    private char edge(String s, int i) {
+        int c = label(s.charAt(i));
+        if (c < 0) {
+            throw new IllegalArgumentException("String has a char outside the alphabet.");
+        }
+        return (char) c;
+    }
 
-    /** Insert a string into Trie, used for Alphabet sort
-     *  gives each node a priority value to ensure priority queue DFS works
-     *  --- further down the tree = higher priority ---
+    /** Passes every word to action in pre-order: a word before its
+     *  extensions, siblings in label order, which is alphabet order for a
+     *  Trie over an alphabet. Walks with an explicit stack, so word length
+     *  is not limited by the call stack.
      *
-     *  Runtime: O(N) - N = length of string
-     * @param s - inputted string
-     * @param priority - hashtable linking characters and priority values
-     * @param alphLen - length of given alphabet
+     *  Runtime: O(T) - T = number of nodes in Trie
+     * @param action - called with each word
      */
-    public void asinsert(String s, Hashtable<Character, Integer> priority, int alphLen) {
-        // Illegal Arguments - s is null or empty
-        if (words.contains(s)) {
-            return;
-        }
-        if (s == null) {
-            throw new IllegalArgumentException("String is null.");
-        }
-        if (s.equals("")) {
-            throw new IllegalArgumentException("String is empty.");
-        }
-
-        TrieNode currTN = root;
-        depth = 0;
-        for (int i = 0; i < s.length(); i++) {
-            char c = s.charAt(i);
-            Hashtable<Character, TrieNode> suffix = currTN.getSuffix();
-            // Move to specific character's tree node if already initiated
-            // else create a new tree node for that character
-            if (suffix.containsKey(c)) {
-                currTN = suffix.get(c);
-                depth++;
-            } else {
-                suffix.put(c, new TrieNode());
-                currTN = suffix.get(c);
-                currTN.setPriority(priority.get(c) - (depth * alphLen));
-                depth++;
+    public void forEachWord(Consumer<String> action) {
+        TrieNode[] stack = new TrieNode[16];
+        int size = 0;
+        stack[size++] = root;
+        while (size > 0) {
+            TrieNode curr = stack[--size];
+            if (curr.getEndOfWord()) {
+                action.accept(curr.getPrev());
+            }
+            int n = curr.childCount();
+            if (size + n > stack.length) {
+                stack = Arrays.copyOf(stack, Math.max(2 * stack.length, size + n));
+            }
+            // push the last child first so the first is visited next
+            for (int i = n - 1; i >= 0; i--) {
+                stack[size++] = curr.childAt(i);
             }
         }
-        currTN.changeEndOfWord();
-        currTN.prev = s;
-        words.add(s);
     }
 
     /** inserts a String with a given weight into the Trie - used for AC
@@ -208,41 +400,124 @@ public class Trie {
      *  Runtime: O(N) - N = length of string
      * @param s - inputted string
      * @param weight - weight of inputted string
+     * @return false if s was already in the Trie, which is left unchanged
      */
-    public void acInsert(String s, double weight) {
-        if (words.contains(s)) {
-            return;
-        }
+    public boolean acInsert(String s, double weight) {
         if (s == null) {
             throw new IllegalArgumentException("String is null.");
         }
+        if (rank != null) {
+            throw new IllegalStateException("acInsert needs a Trie without an alphabet");
+        }
+        if (!words.add(s)) {
+            return false;
+        }
+        acInsertNew(s, weight);
+        return true;
+    }
+
+    /** acInsert for a string the caller knows is not in the Trie yet. Does
+     *  not record s in words; bulk loads that find duplicates by sorting use
+     *  this to skip the HashSet entirely.
+     *
+     *  Runtime: O(N) - N = length of string
+     * @param s - inputted string, not null
+     * @param weight - weight of inputted string
+     */
+    void acInsertNew(String s, double weight) {
+        acInsertNew(s, s, weight);
+    }
 
+    /** acInsertNew for a term stored under a different key, such as its
+     *  TermFolder fold. The path spells key; the end node remembers term,
+     *  which is what queries return.
+     *
+     *  Runtime: O(N) - N = length of key
+     * @param s - key to insert, not null
+     * @param term - string returned for the key
+     * @param weight - weight of inputted string
+     */
+    void acInsertNew(String s, String term, double weight) {
         TrieNode currTN = root;
         if (root.getMaxPriority() < weight) {
             root.setMaxPriority(weight);
-            root.prev = s;
+            root.prev = term;
+        }
+        if (compressed) {
+            currTN = compressedPath(s, weight);
+            currTN.changeEndOfWord();
+            currTN.prev = term;
+            currTN.setPriority2(weight);
+            return;
         }
-        depth = 1;
         for (int i = 0; i < s.length(); i++) {
             char c = s.charAt(i);
-            Hashtable<Character, TrieNode> suffix = currTN.getSuffix();
-            if (suffix.containsKey(c)) {
-                currTN = suffix.get(c);
+            TrieNode next = currTN.getChild(c);
+            if (next != null) {
                 // change priority if not endOfWord
-                if (currTN.getMaxPriority() < weight) {
-                    currTN.setMaxPriority(weight);
+                if (next.getMaxPriority() < weight) {
+                    next.setMaxPriority(weight);
                 }
-                depth++;
             } else {
-                suffix.put(c, new TrieNode());
-                currTN = suffix.get(c);
-                currTN.setMaxPriority(weight);
-                depth++;
+                next = new TrieNode();
+                next.setMaxPriority(weight);
+                currTN.putChild(c, next);
             }
+            currTN = next;
         }
         currTN.changeEndOfWord();
-        currTN.prev = s;
+        currTN.prev = term;
         currTN.setPriority2(weight);
-        words.add(s);
+    }
+
+    /** Walks s through a path-compressed Trie, splitting an edge where s
+     *  leaves it and hanging the rest of s off as a single new node. Raises
+     *  maxPriority to weight along the way.
+     *
+     *  Runtime: O(N) - N = length of string
+     * @param s - inputted string
+     * @param weight - weight of inputted string
+     * @return node ending s
+     */
+    private TrieNode compressedPath(String s, double weight) {
+        TrieNode currTN = root;
+        int i = 0;
+        while (i < s.length()) {
+            char c = s.charAt(i);
+            TrieNode next = currTN.getChild(c);
+            if (next == null) {
+                // the rest of s becomes one edge
+                next = new TrieNode();
+                next.tail = new char[s.length() - i - 1];
+                s.getChars(i + 1, s.length(), next.tail, 0);
+                next.setMaxPriority(weight);
+                currTN.putChild(c, next);
+                return next;
+            }
+
+            // Match as much of the edge as s covers
+            char[] tail = next.tail;
+            int j = 0;
+            while (j < tail.length && i + 1 + j < s.length()
+                    && tail[j] == s.charAt(i + 1 + j)) {
+                j++;
+            }
+            if (j < tail.length) {
+                // s leaves the edge after j tail chars: split it there
+                TrieNode mid = new TrieNode();
+                mid.tail = Arrays.copyOfRange(tail, 0, j);
+                mid.setMaxPriority(next.getMaxPriority());
+                next.tail = Arrays.copyOfRange(tail, j + 1, tail.length);
+                mid.putChild(tail[j], next);
+                currTN.putChild(c, mid);
+                next = mid;
+            }
+            if (next.getMaxPriority() < weight) {
+                next.setMaxPriority(weight);
+            }
+            currTN = next;
+            i += 1 + j;
+        }
+        return currTN;
     }
 }
@@ -0,0 +1,1463 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+
+/**
+ * Frozen, array-flattened form of an autocomplete Trie. Nodes are laid out
+ * in breadth-first order so the children of a node are contiguous and sorted
+ * by label; each node is an index into a handful of primitive arrays instead
+ * of a TrieNode object. Compiling a path-compressed Trie keeps its
+ * multi-character edges: the label is the edge's first char and the rest is
+ * the node's tail.
+ *
+ * The arrays are held as nio buffers, so an index can either wrap heap arrays
+ * (compile) or be queried in place from a memory-mapped file (map), with no
+ * deserialization step. See write for the file format.
+ *
+ * Queries are safe from any number of threads without locking. The node
+ * arrays are read only through absolute gets, which leave buffer positions
+ * alone, and each query keeps its fringe and results in locals. The tree's
+ * shape never changes after compile or map; updateWeight and remove only
+ * rewrite weights, maxPriority and cached top-K lists along one path, under
+ * a StampedLock write lock. Queries run as optimistic reads of that lock and
+ * retry under its read lock only if an update overlapped them.
+ *
+ * @author
+ */
+public class TrieIndex {
+    static final int NONE = -1;         // termId of nodes that end no word
+
+    static final int MAGIC = 0x41434958;    // "ACIX"
+    static final int VERSION = 1;
+    private static final int HEADER_BYTES = 40;
+
+    static final int FOLDED = 1;        // flag: keys are TermFolder folds of the terms
+
+    final IntBuffer firstChild;     // children of n are firstChild[n]..firstChild[n + 1] - 1
+    final CharBuffer label;         // edge character leading into each node
+    final IntBuffer tailStart;      // tail of n is tails[tailStart[n]..tailStart[n + 1] - 1]
+    final CharBuffer tails;         // remaining edge chars of compressed nodes
+    final DoubleBuffer maxPriority; // max weight in each node's subtree
+    final DoubleBuffer weight;      // node's own weight, 0.0 if not end of word
+    final IntBuffer termId;         // index into terms, NONE if not end of word
+    final String[] terms;           // term strings by term id, null if mapped
+    final IntBuffer termStart;      // mapped: chars of term i are
+    final CharBuffer termChars;     // termChars[termStart[i]..termStart[i + 1] - 1]
+    private final int nodes;
+    private final int words;
+    private final int flags;
+
+    // Optional top-K cache, null when off. precompute swaps in a whole new
+    // TopCache, so a concurrent query sees either the old cache or the new one
+    private volatile TopCache cache;
+    private final StampedLock lock = new StampedLock();
+    // per-thread fringe reused by queries that finish within one call
+    private final ThreadLocal<Search> scratch = ThreadLocal.withInitial(Search::new);
+
+    private TrieIndex(int nodes, int words, int flags, IntBuffer firstChild, CharBuffer label,
+                      IntBuffer tailStart, CharBuffer tails, DoubleBuffer maxPriority,
+                      DoubleBuffer weight, IntBuffer termId, String[] terms,
+                      IntBuffer termStart, CharBuffer termChars) {
+        this.nodes = nodes;
+        this.words = words;
+        this.flags = flags;
+        this.firstChild = firstChild;
+        this.label = label;
+        this.tailStart = tailStart;
+        this.tails = tails;
+        this.maxPriority = maxPriority;
+        this.weight = weight;
+        this.termId = termId;
+        this.terms = terms;
+        this.termStart = termStart;
+        this.termChars = termChars;
+    }
+
+    /** Compiles a Trie built with acInsert into a frozen index. The Trie is
+     *  not modified and may be discarded afterwards.
+     *
+     *  Runtime: O(N) - N = number of nodes in Trie
+     * @param t - trie to compile
+     * @return frozen index equivalent to t
+     */
+    public static TrieIndex compile(Trie t) {
+        return compile(t, 0);
+    }
+
+    /** compile, recording flags such as FOLDED in the index and its file */
+    static TrieIndex compile(Trie t, int flags) {
+        // breadth-first order places siblings next to each other
+        ArrayList<Trie.TrieNode> order = new ArrayList<>();
+        order.add(t.root);
+        int words = 0;
+        int tailChars = 0;
+        for (int i = 0; i < order.size(); i++) {
+            Trie.TrieNode curr = order.get(i);
+            if (curr.getEndOfWord()) {
+                words++;
+            }
+            tailChars += curr.getTail().length;
+            for (int j = 0; j < curr.childCount(); j++) {
+                order.add(curr.childAt(j));
+            }
+        }
+
+        int nodes = order.size();
+        int[] firstChild = new int[nodes + 1];
+        char[] label = new char[nodes];
+        int[] tailStart = new int[nodes + 1];
+        char[] tails = new char[tailChars];
+        double[] maxPriority = new double[nodes];
+        double[] weight = new double[nodes];
+        int[] termId = new int[nodes];
+        String[] terms = new String[words];
+
+        int next = 1;
+        int term = 0;
+        int tail = 0;
+        for (int i = 0; i < nodes; i++) {
+            Trie.TrieNode curr = order.get(i);
+            char[] edge = curr.getTail();
+            tailStart[i] = tail;
+            System.arraycopy(edge, 0, tails, tail, edge.length);
+            tail += edge.length;
+            maxPriority[i] = curr.getMaxPriority();
+            firstChild[i] = next;
+            for (int j = 0; j < curr.childCount(); j++) {
+                label[next++] = curr.labelAt(j);
+            }
+            if (curr.getEndOfWord()) {
+                weight[i] = curr.getPriority2();
+                termId[i] = term;
+                terms[term] = curr.getPrev();
+                term++;
+            } else {
+                termId[i] = NONE;
+            }
+        }
+        firstChild[nodes] = next;
+        tailStart[nodes] = tail;
+        return new TrieIndex(nodes, words, flags, IntBuffer.wrap(firstChild), CharBuffer.wrap(label),
+            IntBuffer.wrap(tailStart), CharBuffer.wrap(tails), DoubleBuffer.wrap(maxPriority),
+            DoubleBuffer.wrap(weight), IntBuffer.wrap(termId), terms, null, null);
+    }
+
+    /** Writes the index to a file that map can open.
+     *
+     *  Format, version 1, little-endian: a 40 byte header of ints - magic
+     *  "ACIX", version, nodes, terms, tail chars, term chars, top-K (0 when
+     *  there is no cache), top-K entries, flags, unused - followed by these
+     *  sections, each starting on an 8 byte boundary: maxPriority, weight
+     *  (doubles); firstChild, tailStart, termId, termStart, and if cached
+     *  topStart, top (ints); label, tails, termChars (UTF-16 chars). top
+     *  holds word node ids. Removed terms keep their chars but no node
+     *  refers to them, and their top-K slots are NONE.
+     *
+     *  Runtime: O(N + C) - N = number of nodes, C = number of term chars
+     * @param path - file to create or overwrite
+     */
+    public void write(String path) throws IOException {
+        long stamp = lock.readLock();
+        try {
+            writeTo(path);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private void writeTo(String path) throws IOException {
+        int[] termOffsets = new int[words + 1];
+        long chars = 0;
+        for (int i = 0; i < words; i++) {
+            termOffsets[i] = (int) chars;
+            chars += term(i).length();
+            if (chars > Integer.MAX_VALUE) {
+                throw new IOException("terms too long for index format");
+            }
+        }
+        termOffsets[words] = (int) chars;
+        TopCache cache = this.cache;
+        int cachedEntries = cache == null ? 0 : cache.nodes.limit();
+
+        try (FileChannel ch = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            SectionWriter out = new SectionWriter(ch);
+            out.putInt(MAGIC);
+            out.putInt(VERSION);
+            out.putInt(nodes);
+            out.putInt(words);
+            out.putInt(tails.limit());
+            out.putInt((int) chars);
+            out.putInt(cache == null ? 0 : cache.k);
+            out.putInt(cachedEntries);
+            out.putInt(flags);
+            out.putInt(0);
+
+            out.align();
+            for (int i = 0; i < nodes; i++) {
+                out.putDouble(maxPriority.get(i));
+            }
+            out.align();
+            for (int i = 0; i < nodes; i++) {
+                out.putDouble(weight.get(i));
+            }
+            out.putInts(firstChild, nodes + 1);
+            out.putInts(tailStart, nodes + 1);
+            out.putInts(termId, nodes);
+            out.putInts(IntBuffer.wrap(termOffsets), words + 1);
+            if (cache != null) {
+                out.putInts(cache.start, nodes + 1);
+                out.putInts(cache.nodes, cachedEntries);
+            }
+            out.putChars(label, nodes);
+            out.putChars(tails, tails.limit());
+            out.align();
+            for (int i = 0; i < words; i++) {
+                String s = term(i);
+                for (int j = 0; j < s.length(); j++) {
+                    out.putChar(s.charAt(j));
+                }
+            }
+            out.flush();
+        }
+    }
+
+    /** Opens an index written by write. Every section is memory-mapped read
+     *  only and queried in place; nothing is copied onto the heap, and other
+     *  processes mapping the same file share its pages. The result is read
+     *  only, but precompute may still attach a heap top-K cache.
+     *
+     *  Runtime: O(1) - pages are faulted in by the first queries
+     * @param path - file produced by write
+     * @return index backed by the file
+     */
+    public static TrieIndex map(String path) throws IOException {
+        try (FileChannel ch = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && ch.read(header) >= 0) {
+                continue;
+            }
+            header.flip();
+            if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC) {
+                throw new IOException(path + " is not an autocomplete index");
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("unsupported index version " + version);
+            }
+            int nodes = header.getInt();
+            int words = header.getInt();
+            int tailChars = header.getInt();
+            int termChars = header.getInt();
+            int topK = header.getInt();
+            int cachedEntries = header.getInt();
+            int flags = header.getInt();
+            // every index has a root; the sections must then fit in the file
+            if (nodes <= 0 || words < 0 || tailChars < 0 || termChars < 0 || topK < 0
+                || cachedEntries < 0) {
+                throw new IOException(path + " has a corrupt header");
+            }
+
+            SectionMapper in = new SectionMapper(ch, HEADER_BYTES);
+            DoubleBuffer maxPriority = in.doubles(nodes);
+            DoubleBuffer weight = in.doubles(nodes);
+            IntBuffer firstChild = in.ints(nodes + 1L);
+            IntBuffer tailStart = in.ints(nodes + 1L);
+            IntBuffer termId = in.ints(nodes);
+            IntBuffer termStart = in.ints(words + 1L);
+            IntBuffer topStart = topK > 0 ? in.ints(nodes + 1L) : null;
+            IntBuffer top = topK > 0 ? in.ints(cachedEntries) : null;
+            CharBuffer label = in.chars(nodes);
+            CharBuffer tails = in.chars(tailChars);
+            CharBuffer termPool = in.chars(termChars);
+
+            TrieIndex index = new TrieIndex(nodes, words, flags, firstChild, label, tailStart, tails,
+                maxPriority, weight, termId, null, termStart, termPool);
+            if (topK > 0) {
+                index.cache = new TopCache(topK, topStart, top);
+            }
+            return index;
+        }
+    }
+
+    /** Number of nodes in the index */
+    public int size() {
+        return nodes;
+    }
+
+    /** True if the index is keyed by TermFolder folds of its terms */
+    boolean folded() {
+        return (flags & FOLDED) != 0;
+    }
+
+    /** Number of terms in the index */
+    public int termCount() {
+        return words;
+    }
+
+    /** Returns the term with the given id */
+    String term(int id) {
+        if (terms != null) {
+            return terms[id];
+        }
+        int from = termStart.get(id);
+        char[] chars = new char[termStart.get(id + 1) - from];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = termChars.get(from + i);
+        }
+        return new String(chars);
+    }
+
+    /** True if node n ends a word */
+    boolean isWord(int n) {
+        return termId.get(n) != NONE;
+    }
+
+    /** Weight of the word ending at n, 0.0 if n ends no word */
+    double weight(int n) {
+        long stamp = lock.tryOptimisticRead();
+        double w = weight.get(n);
+        if (lock.validate(stamp)) {
+            return w;
+        }
+        stamp = lock.readLock();
+        try {
+            return weight.get(n);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /** Returns the child of node n reached by c, or NONE
+     *
+     *  Runtime: O(log F) - F = number of children
+     */
+    int child(int n, char c) {
+        int lo = firstChild.get(n);
+        int hi = firstChild.get(n + 1) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            char m = label.get(mid);
+            if (m < c) {
+                lo = mid + 1;
+            } else if (m > c) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return NONE;
+    }
+
+    /** Number of chars on n's edge after its label */
+    int tailLength(int n) {
+        return tailStart.get(n + 1) - tailStart.get(n);
+    }
+
+    /** The i-th char on n's edge after its label */
+    char tailChar(int n, int i) {
+        return tails.get(tailStart.get(n) + i);
+    }
+
+    /** Returns the node whose subtree holds every word starting with s, or
+     *  NONE. s may end partway along a compressed edge, in which case the
+     *  node below that edge is returned.
+     *
+     *  Runtime: O(M log F) - M = length of s
+     */
+    int walk(String s) {
+        return walk(s, false);
+    }
+
+    /** Returns the node ending exactly at s, or NONE */
+    int find(String s) {
+        return walk(s, true);
+    }
+
+    private int walk(String s, boolean exact) {
+        int curr = 0;
+        int i = 0;
+        while (i < s.length()) {
+            curr = child(curr, s.charAt(i));
+            if (curr == NONE) {
+                return NONE;
+            }
+            i++;
+            // match the node's tail against the rest of s
+            int end = tailStart.get(curr + 1);
+            for (int t = tailStart.get(curr); t < end; t++, i++) {
+                if (i == s.length()) {
+                    return exact ? NONE : curr;
+                }
+                if (tails.get(t) != s.charAt(i)) {
+                    return NONE;
+                }
+            }
+        }
+        return curr;
+    }
+
+    /** Walks a run of prefixes in sorted order, sharing descent: each walk
+     *  resumes from the deepest node that ends within the prefix it has in
+     *  common with the one before. nodes[i - from] receives
+     *  walk(prefixes[order[i]]).
+     *
+     *  Runtime: O(C log F) - C = chars not shared with the previous prefix
+     * @param prefixes - prefixes to walk
+     * @param order - indices into prefixes, sorted by prefix in [from, to)
+     * @param from - first sorted position to walk
+     * @param to - end of the sorted positions to walk
+     * @param nodes - receives the node of each prefix, to - from entries
+     */
+    void walkSorted(String[] prefixes, int[] order, int from, int to, int[] nodes) {
+        // path[0..top] are the nodes passed so far, ends[] the chars consumed
+        // once each is fully matched
+        int[] path = new int[16];
+        int[] ends = new int[16];
+        int top = 0;
+        String prev = "";
+        for (int p = from; p < to; p++) {
+            String s = prefixes[order[p]];
+            int common = 0;
+            int max = Math.min(prev.length(), s.length());
+            while (common < max && prev.charAt(common) == s.charAt(common)) {
+                common++;
+            }
+            while (ends[top] > common) {
+                top--;
+            }
+            int curr = path[top];
+            int i = ends[top];
+            while (i < s.length()) {
+                int next = child(curr, s.charAt(i));
+                if (next == NONE) {
+                    curr = NONE;
+                    break;
+                }
+                i++;
+                // match the node's tail against the rest of s
+                int t = tailStart.get(next);
+                int end = tailStart.get(next + 1);
+                while (t < end && i < s.length() && tails.get(t) == s.charAt(i)) {
+                    t++;
+                    i++;
+                }
+                if (t < end && i < s.length()) {
+                    curr = NONE;
+                    break;
+                }
+                curr = next;
+                if (t == end) {
+                    // edge fully matched, later prefixes may resume here
+                    if (++top == path.length) {
+                        path = Arrays.copyOf(path, top * 2);
+                        ends = Arrays.copyOf(ends, top * 2);
+                    }
+                    path[top] = next;
+                    ends[top] = i;
+                }
+            }
+            nodes[p - from] = curr;
+            prev = s;
+        }
+    }
+
+    /** Follows the max priority path from node n to the best word below it
+     *
+     *  Runtime: O(M F) - M = depth of best word
+     * @return best term in n's subtree, null if there is none
+     */
+    String topMatch(int n) {
+        return read(() -> bestTerm(n));
+    }
+
+    /** Returns up to k terms of n's subtree ordered by highest priority,
+     *  copied from the top-K cache when n is cached and k fits
+     *
+     * Runtime: O(K) cached, else O(N log N) - N = number of nodes in subtree
+     */
+    String[] priorityDFS(int n, int k) {
+        return read(() -> topTerms(n, k));
+    }
+
+    /** Fills out with the best terms of n's subtree ordered by highest
+     *  priority, using this thread's scratch fringe. Allocates nothing on a
+     *  heap index once the scratch fringe has grown to fit; a mapped index
+     *  still builds each returned String.
+     *
+     * Runtime: O(K) cached, else O(N log N) - N = number of nodes in subtree
+     * @param n - node whose subtree is searched
+     * @param out - receives up to out.length terms
+     * @param weights - receives the weight of each term, or null
+     * @return number of terms written to out
+     */
+    int priorityDFS(int n, String[] out, double[] weights) {
+        // same protocol as read, spelled out to avoid a capturing lambda
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                int found = fill(n, out, weights);
+                if (lock.validate(stamp)) {
+                    return found;
+                }
+            } catch (RuntimeException e) {
+                if (lock.validate(stamp)) {
+                    throw e;
+                }
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return fill(n, out, weights);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private int fill(int n, String[] out, double[] weights) {
+        TopCache cache = this.cache;
+        int found = 0;
+        if (cache != null && out.length <= cache.k && cache.covers(n)) {
+            int from = cache.start.get(n);
+            int len = Math.min(out.length, cache.start.get(n + 1) - from);
+            while (found < len && cache.nodes.get(from + found) != NONE) {
+                int word = cache.nodes.get(from + found);
+                out[found] = term(termId.get(word));
+                if (weights != null) {
+                    weights[found] = weight.get(word);
+                }
+                found++;
+            }
+            return found;
+        }
+        Search search = scratch.get();
+        search.reset(n);
+        while (found < out.length) {
+            int word = search.nextWord();
+            if (word == NONE) {
+                break;
+            }
+            out[found] = term(termId.get(word));
+            if (weights != null) {
+                weights[found] = weight.get(word);
+            }
+            found++;
+        }
+        return found;
+    }
+
+    // Runs a query as an optimistic read, falling back to the read lock if an
+    // update ran meanwhile. A torn read may send the query out of bounds;
+    // that is retried the same way.
+    private <T> T read(Supplier<T> query) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                T retVal = query.get();
+                if (lock.validate(stamp)) {
+                    return retVal;
+                }
+            } catch (RuntimeException e) {
+                if (lock.validate(stamp)) {
+                    throw e;
+                }
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return query.get();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private String bestTerm(int n) {
+        if (isEmpty(n) || (firstChild.get(n) == firstChild.get(n + 1) && !isWord(n))) {
+            return null;
+        }
+        TopCache cache = this.cache;
+        if (cache != null && cache.covers(n)) {
+            int word = cache.nodes.get(cache.start.get(n));
+            return word == NONE ? null : term(termId.get(word));
+        }
+        double max = maxPriority.get(n);
+        while (!isWord(n) || weight.get(n) < max) {
+            int c = firstChild.get(n);
+            while (maxPriority.get(c) != max) {
+                c++;
+            }
+            n = c;
+        }
+        return term(termId.get(n));
+    }
+
+    private String[] topTerms(int n, int k) {
+        TopCache cache = this.cache;
+        if (cache != null && k <= cache.k && cache.covers(n)) {
+            int from = cache.start.get(n);
+            int len = Math.min(k, cache.start.get(n + 1) - from);
+            // lists shrunk by remove are padded with NONE
+            while (len > 0 && cache.nodes.get(from + len - 1) == NONE) {
+                len--;
+            }
+            String[] retVal = new String[len];
+            for (int i = 0; i < len; i++) {
+                retVal[i] = term(termId.get(cache.nodes.get(from + i)));
+            }
+            return retVal;
+        }
+        int[] best = new int[Math.min(k, words)];
+        int found = priorityDFS(n, k, best);
+        String[] retVal = new String[found];
+        for (int i = 0; i < found; i++) {
+            retVal[i] = term(termId.get(best[i]));
+        }
+        return retVal;
+    }
+
+    /** Lazily yields up to k terms of n's subtree ordered by highest
+     *  priority. Every iterator runs its own best-first Search, advanced only
+     *  as far as the caller reads, so memory follows the fringe rather than
+     *  k. When n is cached and k fits, the at most K cached terms are copied
+     *  up front instead.
+     *
+     *  Iteration takes no lock. An updateWeight or remove that lands
+     *  mid-iteration is seen by the parts of the subtree not yet expanded;
+     *  no term is returned twice.
+     *
+     * Runtime: O(R log F) for R results read - F = size of fringe
+     * @param n - node whose subtree is searched
+     * @param k - maximum number of terms to yield
+     */
+    Iterable<String> matches(int n, int k) {
+        return () -> {
+            TopCache cache = this.cache;
+            if (cache != null && k <= cache.k && cache.covers(n)) {
+                return Arrays.asList(priorityDFS(n, k)).iterator();
+            }
+            return new Matches<String>(n, k) {
+                @Override
+                String result(int word, int id) {
+                    return term(id);
+                }
+            };
+        };
+    }
+
+    /** matches, but each term comes with its weight */
+    Iterable<Autocomplete.Match> weightedMatches(int n, int k) {
+        return () -> {
+            TopCache cache = this.cache;
+            if (cache != null && k <= cache.k && cache.covers(n)) {
+                String[] terms = new String[k];
+                double[] weights = new double[k];
+                int found = priorityDFS(n, terms, weights);
+                ArrayList<Autocomplete.Match> retVal = new ArrayList<>(found);
+                for (int i = 0; i < found; i++) {
+                    retVal.add(new Autocomplete.Match(terms[i], weights[i]));
+                }
+                return retVal.iterator();
+            }
+            return new Matches<Autocomplete.Match>(n, k) {
+                @Override
+                Autocomplete.Match result(int word, int id) {
+                    return new Autocomplete.Match(term(id), weight.get(word));
+                }
+            };
+        };
+    }
+
+    /** Depth first search based on node priority - higher priority nodes will
+     * be searched first. Reads the arrays unguarded; callers go through read
+     * or hold the lock.
+     *
+     * Runtime: O(N log N) - N = number of nodes in subtree
+     * @param n - node whose subtree is searched
+     * @param k - number of items to look for
+     * @param out - receives word node ids ordered by highest priority
+     * @return number of nodes written to out
+     */
+    int priorityDFS(int n, int k, int[] out) {
+        Search search = scratch.get();
+        search.reset(n);
+        int index = 0;
+        // Breaks when no more strings to return or have found k items
+        while (index < k) {
+            int word = search.nextWord();
+            if (word == NONE) {
+                break;
+            }
+            out[index++] = word;
+        }
+        return index;
+    }
+
+    /** Returns up to k terms, ordered by highest priority, that start with
+     *  a string within maxEdits Levenshtein edits of prefix. The tree is
+     *  searched best-first by maxPriority as in priorityDFS, with an
+     *  edit-distance row kept for each fringe node whose subtree is still
+     *  undecided: the subtree is dropped once every cell of the row exceeds
+     *  maxEdits, and taken whole once the row's last cell is within it.
+     *
+     * Runtime: O(V M log V) - M = length of prefix
+     *                         V = nodes within maxEdits of a prefix of prefix
+     * @param prefix - misspelled prefix
+     * @param k - number of terms to look for
+     * @param maxEdits - most insertions, deletions and substitutions allowed
+     */
+    String[] fuzzyTopTerms(String prefix, int k, int maxEdits) {
+        return read(() -> {
+            FuzzySearch search = new FuzzySearch(prefix, maxEdits);
+            ArrayList<String> retVal = new ArrayList<>();
+            while (retVal.size() < k) {
+                int word = search.nextWord();
+                if (word == NONE) {
+                    break;
+                }
+                retVal.add(term(termId.get(word)));
+            }
+            return retVal.toArray(new String[0]);
+        });
+    }
+
+    /** Builds an InfixIndex over every term, with each removed term's
+     *  weight NEGATIVE_INFINITY, matching folded terms if the index is
+     *  folded. Holds the read lock so no update is lost.
+     */
+    InfixIndex infixIndex() {
+        long stamp = lock.readLock();
+        try {
+            String[] all = new String[words];
+            double[] weights = new double[words];
+            Arrays.fill(weights, Double.NEGATIVE_INFINITY);
+            for (int id = 0; id < words; id++) {
+                all[id] = term(id);
+            }
+            String[] keys = all;
+            if (folded()) {
+                keys = new String[words];
+                for (int id = 0; id < words; id++) {
+                    keys[id] = TermFolder.fold(all[id]);
+                }
+            }
+            for (int n = 0; n < nodes; n++) {
+                if (isWord(n)) {
+                    weights[termId.get(n)] = weight.get(n);
+                }
+            }
+            return new InfixIndex(keys, all, weights);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /** Sets the weight of term s, which must already be in the index.
+     *
+     *  Runtime: O(M F) - M = length of s, F = max number of children
+     * @param s - term to reweight
+     * @param w - new weight, not negative
+     * @return false if s is not a term of the index
+     * @throws UnsupportedOperationException if the index is memory-mapped
+     */
+    boolean updateWeight(String s, double w) {
+        // find reads only the tree's shape, which never changes
+        return updateWeight(find(s), w);
+    }
+
+    /** updateWeight of the word ending at node n, false if n ends no word */
+    boolean updateWeight(int n, double w) {
+        checkWritable();
+        long stamp = lock.writeLock();
+        try {
+            if (n == NONE || !isWord(n)) {
+                return false;
+            }
+            weight.put(n, w);
+            repair(n);
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /** Removes term s. Its node stays in place, so the index keeps its shape
+     *  and subtrees left with no words are skipped by every query.
+     *
+     *  Runtime: O(M F) - M = length of s, F = max number of children
+     * @param s - term to remove
+     * @return false if s is not a term of the index
+     * @throws UnsupportedOperationException if the index is memory-mapped
+     */
+    boolean remove(String s) {
+        return remove(find(s));
+    }
+
+    /** remove of the word ending at node n, false if n ends no word */
+    boolean remove(int n) {
+        checkWritable();
+        long stamp = lock.writeLock();
+        try {
+            if (n == NONE || !isWord(n)) {
+                return false;
+            }
+            termId.put(n, NONE);
+            weight.put(n, 0.0);
+            repair(n);
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void checkWritable() {
+        if (weight.isReadOnly()) {
+            throw new UnsupportedOperationException("memory-mapped index is read only");
+        }
+    }
+
+    // Recomputes maxPriority from n's own weight and its children's values,
+    // then does the same for each ancestor up to the root. Cached top-K lists
+    // on the path are refreshed too; without a cache the walk stops at the
+    // first node whose maxPriority is unchanged. Caller holds the write lock.
+    private void repair(int n) {
+        TopCache cache = this.cache;
+        while (true) {
+            double max = isWord(n) ? weight.get(n) : Double.NEGATIVE_INFINITY;
+            int end = firstChild.get(n + 1);
+            for (int c = firstChild.get(n); c < end; c++) {
+                max = Math.max(max, maxPriority.get(c));
+            }
+            boolean changed = max != maxPriority.get(n);
+            maxPriority.put(n, max);
+            if (cache != null && cache.covers(n)) {
+                int from = cache.start.get(n);
+                int[] best = new int[cache.start.get(n + 1) - from];
+                int found = priorityDFS(n, best.length, best);
+                for (int i = 0; i < best.length; i++) {
+                    cache.nodes.put(from + i, i < found ? best[i] : NONE);
+                }
+            } else if (!changed && cache == null) {
+                return;
+            }
+            if (n == 0) {
+                return;
+            }
+            n = parent(n);
+        }
+    }
+
+    // Parent of node n > 0: the last node whose children start at or before n
+    private int parent(int n) {
+        int lo = 0;
+        int hi = n - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (firstChild.get(mid) <= n) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    // True if every term below n has been removed
+    private boolean isEmpty(int n) {
+        return maxPriority.get(n) == Double.NEGATIVE_INFINITY;
+    }
+
+    /** Precomputes the top maxK word nodes of every node that a prefix of at
+     *  most maxDepth chars can end on, and of every node whose subtree holds
+     *  at least minTerms words. Afterwards priorityDFS answers any k <= maxK
+     *  at those nodes with an array copy. Replaces any earlier cache.
+     *
+     *  Runtime: O(C N log N) - C = number of cached nodes
+     * @param maxK - number of terms stored per cached node
+     * @param maxDepth - cache nodes whose edge starts at most this deep
+     * @param minTerms - also cache nodes with at least this many words below
+     */
+    void precompute(int maxK, int maxDepth, int minTerms) {
+        // shuts out updates, but not queries, while the lists are built
+        long stamp = lock.readLock();
+        try {
+            cache = buildCache(maxK, maxDepth, minTerms);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private TopCache buildCache(int maxK, int maxDepth, int minTerms) {
+        int[] subtree = subtreeTerms();
+        boolean[] cached = selectCached(maxDepth, minTerms, subtree);
+        int[] starts = new int[nodes + 1];
+        long entries = 0;
+        for (int n = 0; n < nodes; n++) {
+            starts[n] = (int) entries;
+            if (cached[n]) {
+                entries += Math.min(maxK, subtree[n]);
+            }
+        }
+        if (entries > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("top-K cache too large");
+        }
+        starts[nodes] = (int) entries;
+
+        int[] lists = new int[(int) entries];
+        for (int n = 0; n < nodes; n++) {
+            if (cached[n]) {
+                int[] best = new int[starts[n + 1] - starts[n]];
+                priorityDFS(n, best.length, best);
+                System.arraycopy(best, 0, lists, starts[n], best.length);
+            }
+        }
+        return new TopCache(maxK, IntBuffer.wrap(starts), IntBuffer.wrap(lists));
+    }
+
+    /** Returns the bytes a top-K cache with these settings would take */
+    long estimateCache(int maxK, int maxDepth, int minTerms) {
+        int[] subtree = subtreeTerms();
+        boolean[] cached = selectCached(maxDepth, minTerms, subtree);
+        long entries = 0;
+        for (int n = 0; n < nodes; n++) {
+            if (cached[n]) {
+                entries += Math.min(maxK, subtree[n]);
+            }
+        }
+        return 4L * (nodes + 1) + 4L * entries;
+    }
+
+    /** Describes the memory taken by each array of the index, excluding heap
+     *  term strings; a mapped index holds all of it off-heap
+     */
+    String memoryReport() {
+        long n = nodes;
+        long nodeBytes = 4 * (n + 1) + 2 * n + 4 * (n + 1) + 8 * n + 8 * n + 4 * n;
+        long tailBytes = 2L * tails.limit();
+        long termBytes = terms != null ? 4L * words : 4L * (words + 1) + 2L * termChars.limit();
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("nodes: %d, terms: %d, %s%n", n, words,
+            terms != null ? "heap" : "memory-mapped"));
+        sb.append(String.format("node arrays: %,d bytes%n", nodeBytes));
+        sb.append(String.format("edge tails:  %,d bytes%n", tailBytes));
+        sb.append(String.format("terms:       %,d bytes%n", termBytes));
+        TopCache cache = this.cache;
+        if (cache == null) {
+            sb.append(String.format("top-K cache: off%n"));
+        } else {
+            int cachedNodes = 0;
+            for (int i = 0; i < n; i++) {
+                if (cache.covers(i)) {
+                    cachedNodes++;
+                }
+            }
+            long cacheBytes = 4L * cache.start.limit() + 4L * cache.nodes.limit();
+            sb.append(String.format("top-K cache: K=%d, %d nodes, %d entries, %,d bytes%n",
+                cache.k, cachedNodes, cache.nodes.limit(), cacheBytes));
+        }
+        return sb.toString();
+    }
+
+    // Marks nodes reachable by a prefix of at most maxDepth chars, or whose
+    // subtree has at least minTerms words
+    private boolean[] selectCached(int maxDepth, int minTerms, int[] subtree) {
+        boolean[] cached = new boolean[nodes];
+        // depth[n] = number of chars above n's edge; parents precede children
+        int[] depth = new int[nodes];
+        for (int n = 0; n < nodes; n++) {
+            int below = depth[n] + (n == 0 ? 0 : 1 + tailStart.get(n + 1) - tailStart.get(n));
+            for (int c = firstChild.get(n); c < firstChild.get(n + 1); c++) {
+                depth[c] = below;
+            }
+            boolean shallow = n == 0 ? maxDepth >= 0 : depth[n] < maxDepth;
+            cached[n] = subtree[n] > 0 && (shallow || subtree[n] >= minTerms);
+        }
+        return cached;
+    }
+
+    // Number of words in each node's subtree; children follow their parents
+    private int[] subtreeTerms() {
+        int[] subtree = new int[nodes];
+        for (int n = nodes - 1; n >= 0; n--) {
+            if (isWord(n)) {
+                subtree[n]++;
+            }
+            for (int c = firstChild.get(n); c < firstChild.get(n + 1); c++) {
+                subtree[n] += subtree[c];
+            }
+        }
+        return subtree;
+    }
+
+    /** Best-first search over one subtree, advanced one term at a time.
+     *  Fringe entries are node ids, or ~node for a word whose own weight is
+     *  below its subtree's maxPriority, kept in a binary heap alongside the
+     *  priority each had when queued. Entries come out by decreasing
+     *  priority; on ties words come first, then nodes in breadth-first order.
+     *  Subtrees emptied by remove are never queued.
+     */
+    private class Search {
+        private double[] keys = new double[16];
+        private int[] entries = new int[16];
+        private int size;
+
+        /** Starts a search of n's subtree, dropping any earlier fringe */
+        void reset(int n) {
+            size = 0;
+            if (!isEmpty(n)) {
+                push(n, maxPriority.get(n));
+            }
+        }
+
+        /** Returns the next word's node, or NONE once the subtree is exhausted */
+        int nextWord() {
+            while (size > 0) {
+                int curr = entries[0];
+                pop();
+                if (curr < 0) {
+                    if (isWord(~curr)) {
+                        return ~curr;
+                    }
+                    continue;
+                }
+                // queue children nodes
+                int end = firstChild.get(curr + 1);
+                for (int c = firstChild.get(curr); c < end; c++) {
+                    double p = maxPriority.get(c);
+                    if (p != Double.NEGATIVE_INFINITY) {
+                        push(c, p);
+                    }
+                }
+                if (isWord(curr)) {
+                    // returns term if its weight is the subtree max, else
+                    // requeue it under its own weight
+                    double w = weight.get(curr);
+                    if (w == maxPriority.get(curr)) {
+                        return curr;
+                    }
+                    push(~curr, w);
+                }
+            }
+            return NONE;
+        }
+
+        private void push(int entry, double key) {
+            if (size == entries.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                entries = Arrays.copyOf(entries, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!before(key, entry, keys[parent], entries[parent])) {
+                    break;
+                }
+                keys[i] = keys[parent];
+                entries[i] = entries[parent];
+                i = parent;
+            }
+            keys[i] = key;
+            entries[i] = entry;
+        }
+
+        private void pop() {
+            double key = keys[--size];
+            int entry = entries[size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size
+                        && before(keys[child + 1], entries[child + 1], keys[child], entries[child])) {
+                    child++;
+                }
+                if (!before(keys[child], entries[child], key, entry)) {
+                    break;
+                }
+                keys[i] = keys[child];
+                entries[i] = entries[child];
+                i = child;
+            }
+            keys[i] = key;
+            entries[i] = entry;
+        }
+
+    }
+
+    /** Best-first search for the words whose start is within maxEdits of a
+     *  prefix. Fringe entries are ordered as in Search; each also holds the
+     *  slot of its node's edit-distance row, or NONE once every word below
+     *  the node is known to match. Row s is rows[s * width..(s + 1) * width),
+     *  cell j being the distance from the first j chars of prefix to the
+     *  node's string.
+     */
+    private class FuzzySearch {
+        private final String prefix;
+        private final int maxEdits;
+        private final int width;
+        private double[] keys = new double[16];
+        private int[] entries = new int[16];
+        private int[] slots = new int[16];
+        private int size;
+        private int[] rows;
+        private int rowCount;
+        private int[] free = new int[16];   // slots released by expanded nodes
+        private int freeCount;
+
+        FuzzySearch(String prefix, int maxEdits) {
+            this.prefix = prefix;
+            this.maxEdits = maxEdits;
+            width = prefix.length() + 1;
+            rows = new int[16 * width];
+            if (isEmpty(0)) {
+                return;
+            }
+            if (prefix.length() <= maxEdits) {
+                // deleting all of prefix is within budget
+                push(0, maxPriority.get(0), NONE);
+                return;
+            }
+            int s = allocate();
+            for (int j = 0; j < width; j++) {
+                rows[s * width + j] = j;
+            }
+            push(0, maxPriority.get(0), s);
+        }
+
+        /** Returns the next matching word's node, or NONE once none are left */
+        int nextWord() {
+            while (size > 0) {
+                int curr = entries[0];
+                int slot = slots[0];
+                pop();
+                if (curr < 0) {
+                    if (isWord(~curr)) {
+                        return ~curr;
+                    }
+                    continue;
+                }
+                int end = firstChild.get(curr + 1);
+                for (int c = firstChild.get(curr); c < end; c++) {
+                    double p = maxPriority.get(c);
+                    if (p == Double.NEGATIVE_INFINITY) {
+                        continue;
+                    }
+                    if (slot == NONE) {
+                        push(c, p, NONE);
+                    } else {
+                        descend(c, p, slot);
+                    }
+                }
+                if (slot != NONE) {
+                    // curr's own string was never within maxEdits of prefix
+                    free(slot);
+                } else if (isWord(curr)) {
+                    double w = weight.get(curr);
+                    if (w == maxPriority.get(curr)) {
+                        return curr;
+                    }
+                    push(~curr, w, NONE);
+                }
+            }
+            return NONE;
+        }
+
+        // Extends the row in slot along c's edge and queues c, marked as
+        // matching whole if the row reaches the end of prefix in budget
+        private void descend(int c, double p, int slot) {
+            int s = allocate();
+            int row = s * width;
+            int min = step(slot * width, row, label.get(c));
+            int t = tailStart.get(c);
+            int end = tailStart.get(c + 1);
+            while (rows[row + width - 1] > maxEdits) {
+                if (min > maxEdits) {
+                    free(s);
+                    return;
+                }
+                if (t == end) {
+                    push(c, p, s);
+                    return;
+                }
+                min = step(row, row, tails.get(t++));
+            }
+            free(s);
+            push(c, p, NONE);
+        }
+
+        // Writes the row after appending ch, reading the row at from; from
+        // may equal to. Returns the new row's smallest cell.
+        private int step(int from, int to, char ch) {
+            int diag = rows[from];
+            int left = diag + 1;
+            rows[to] = left;
+            int min = left;
+            for (int j = 1; j < width; j++) {
+                int up = rows[from + j];
+                int cell = Math.min(Math.min(up, left) + 1,
+                                    diag + (prefix.charAt(j - 1) == ch ? 0 : 1));
+                rows[to + j] = cell;
+                min = Math.min(min, cell);
+                diag = up;
+                left = cell;
+            }
+            return min;
+        }
+
+        private int allocate() {
+            if (freeCount > 0) {
+                return free[--freeCount];
+            }
+            if ((rowCount + 1) * width > rows.length) {
+                rows = Arrays.copyOf(rows, rows.length * 2);
+            }
+            return rowCount++;
+        }
+
+        private void free(int slot) {
+            if (freeCount == free.length) {
+                free = Arrays.copyOf(free, freeCount * 2);
+            }
+            free[freeCount++] = slot;
+        }
+
+        private void push(int entry, double key, int slot) {
+            if (size == entries.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                entries = Arrays.copyOf(entries, size * 2);
+                slots = Arrays.copyOf(slots, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!before(key, entry, keys[parent], entries[parent])) {
+                    break;
+                }
+                keys[i] = keys[parent];
+                entries[i] = entries[parent];
+                slots[i] = slots[parent];
+                i = parent;
+            }
+            keys[i] = key;
+            entries[i] = entry;
+            slots[i] = slot;
+        }
+
+        private void pop() {
+            double key = keys[--size];
+            int entry = entries[size];
+            int slot = slots[size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size
+                        && before(keys[child + 1], entries[child + 1], keys[child], entries[child])) {
+                    child++;
+                }
+                if (!before(keys[child], entries[child], key, entry)) {
+                    break;
+                }
+                keys[i] = keys[child];
+                entries[i] = entries[child];
+                slots[i] = slots[child];
+                i = child;
+            }
+            keys[i] = key;
+            entries[i] = entry;
+            slots[i] = slot;
+        }
+    }
+
+    // Fringe order shared by Search and FuzzySearch: higher key first, then
+    // words before nodes, then lower node id
+    private static boolean before(double ka, int a, double kb, int b) {
+        if (ka != kb) {
+            return ka > kb;
+        }
+        if ((a < 0) != (b < 0)) {
+            return a < 0;
+        }
+        return a < 0 ? ~a < ~b : a < b;
+    }
+
+    /** Iterator over the words of a Search, stopping after k */
+    private abstract class Matches<T> implements Iterator<T> {
+        private final Search search;
+        private int left;
+        private int nextWord;
+        private int next = NONE;   // term id of the next result
+
+        Matches(int n, int k) {
+            search = new Search();
+            search.reset(n);
+            left = k;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == NONE && left > 0) {
+                int word = search.nextWord();
+                if (word == NONE) {
+                    left = 0;
+                } else {
+                    // NONE if removed since the search reached it
+                    next = termId.get(word);
+                    nextWord = word;
+                }
+            }
+            return next != NONE;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            left--;
+            T retVal = result(nextWord, next);
+            next = NONE;
+            return retVal;
+        }
+
+        /** Builds the result for the word node ending term id */
+        abstract T result(int word, int id);
+    }
+
+    /** Top-K cache: the best word nodes of n are
+     *  nodes[start[n]..start[n + 1] - 1], an empty range if n is not cached.
+     *  Which nodes are cached, and where, never changes once built; the
+     *  lists themselves are rewritten in place by repair during updateWeight
+     *  and remove, under the write lock, so readers see them through the
+     *  same optimistic read as the rest of the index and retry a torn list.
+     */
+    private static final class TopCache {
+        final int k;
+        final IntBuffer start;
+        final IntBuffer nodes;
+
+        TopCache(int k, IntBuffer start, IntBuffer nodes) {
+            this.k = k;
+            this.start = start;
+            this.nodes = nodes;
+        }
+
+        boolean covers(int n) {
+            return start.get(n) != start.get(n + 1);
+        }
+    }
+
+    /** Streams little-endian values to a channel, padding sections to 8 bytes */
+    private static class SectionWriter {
+        private final FileChannel ch;
+        private final ByteBuffer buf = ByteBuffer.allocateDirect(1 << 16)
+            .order(ByteOrder.LITTLE_ENDIAN);
+        private long offset;
+
+        SectionWriter(FileChannel ch) {
+            this.ch = ch;
+        }
+
+        void putInt(int v) throws IOException {
+            ensure(4);
+            buf.putInt(v);
+        }
+
+        void putDouble(double v) throws IOException {
+            ensure(8);
+            buf.putDouble(v);
+        }
+
+        void putChar(char v) throws IOException {
+            ensure(2);
+            buf.putChar(v);
+        }
+
+        void putInts(IntBuffer src, int count) throws IOException {
+            align();
+            for (int i = 0; i < count; i++) {
+                putInt(src.get(i));
+            }
+        }
+
+        void putChars(CharBuffer src, int count) throws IOException {
+            align();
+            for (int i = 0; i < count; i++) {
+                putChar(src.get(i));
+            }
+        }
+
+        void align() throws IOException {
+            while ((offset + buf.position()) % 8 != 0) {
+                ensure(1);
+                buf.put((byte) 0);
+            }
+        }
+
+        void flush() throws IOException {
+            buf.flip();
+            while (buf.hasRemaining()) {
+                offset += ch.write(buf);
+            }
+            buf.clear();
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buf.remaining() < bytes) {
+                flush();
+            }
+        }
+    }
+
+    /** Maps consecutive 8 byte aligned sections of an index file */
+    private static class SectionMapper {
+        private final FileChannel ch;
+        private long offset;
+
+        SectionMapper(FileChannel ch, long offset) {
+            this.ch = ch;
+            this.offset = offset;
+        }
+
+        DoubleBuffer doubles(long count) throws IOException {
+            return map(8L * count).asDoubleBuffer();
+        }
+
+        IntBuffer ints(long count) throws IOException {
+            return map(4L * count).asIntBuffer();
+        }
+
+        CharBuffer chars(long count) throws IOException {
+            return map(2L * count).asCharBuffer();
+        }
+
+        private ByteBuffer map(long bytes) throws IOException {
+            offset = (offset + 7) & ~7L;
+            if (offset + bytes > ch.size()) {
+                throw new IOException("index file is truncated");
+            }
+            if (bytes > Integer.MAX_VALUE) {
+                throw new IOException("index section is too large to map");
+            }
+            ByteBuffer section = ch.map(FileChannel.MapMode.READ_ONLY, offset, bytes)
+                .order(ByteOrder.LITTLE_ENDIAN);
+            offset += bytes;
+            return section;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+import java.io.InputStream;
+import java.io.PrintStream;
+
+import bench.Engine;
+
+/**
+ * Binds the benchmark suite in package bench to the project's classes.
+ * Compiled together with the benchmarks only; see README.md.
+ */
+public class BenchEngine implements Engine {
+
+    @Override
+    public Completer autocomplete(String[] terms, double[] weights) {
+        Autocomplete ac = new Autocomplete(terms, weights);
+        return new Completer() {
+            @Override
+            public String topMatch(String prefix) {
+                return ac.topMatch(prefix);
+            }
+
+            @Override
+            public Iterable<String> topMatches(String prefix, int k) {
+                return ac.topMatches(prefix, k);
+            }
+
+            @Override
+            public int topMatches(String prefix, String[] out) {
+                return ac.topMatches(prefix, out);
+            }
+
+            @Override
+            public double weightOf(String term) {
+                return ac.weightOf(term);
+            }
+        };
+    }
+
+    @Override
+    public PrefixSet trie(boolean compressed) {
+        Trie t = new Trie(compressed);
+        return new PrefixSet() {
+            @Override
+            public void insert(String s) {
+                t.insert(s);
+            }
+
+            @Override
+            public void acInsert(String s, double weight) {
+                t.acInsert(s, weight);
+            }
+
+            @Override
+            public boolean find(String s, boolean isFullWord) {
+                return t.find(s, isFullWord);
+            }
+        };
+    }
+
+    @Override
+    public void alphabetSort(InputStream in, PrintStream out) throws Exception {
+        InputStream stdin = System.in;
+        PrintStream stdout = System.out;
+        System.setIn(in);
+        System.setOut(out);
+        try {
+            AlphabetSort.main(new String[0]);
+        } finally {
+            System.setIn(stdin);
+            System.setOut(stdout);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End-to-end AlphabetSort: parse the alphabet and words from an in-memory
+ * stdin, build the Trie and print the sorted words to a discarding stdout.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 3, jvmArgsAppend = {"-Xms4g", "-Xmx4g", "-XX:+AlwaysPreTouch"})
+public class AlphabetSortBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    int size;
+
+    Engine engine;
+    byte[] input;
+    PrintStream discard;
+
+    @Setup
+    public void setup() {
+        engine = Engine.load();
+        input = new Workload(size, 1.0).alphabetSortInput(Workload.SEED + 3);
+        discard = new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        });
+    }
+
+    @Benchmark
+    public void sort() throws Exception {
+        engine.alphabetSort(new ByteArrayInputStream(input), discard);
+    }
+}
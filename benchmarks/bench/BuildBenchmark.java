@@ -0,0 +1,66 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cold builds: Autocomplete construction (sequential below
+ * Autocomplete.PARALLEL_THRESHOLD terms, bulk loaded above) and filling a
+ * plain or path-compressed Trie. One build per measured iteration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 3, jvmArgsAppend = {"-Xms4g", "-Xmx4g", "-XX:+AlwaysPreTouch"})
+public class BuildBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    int size;
+
+    @Param({"1.0"})
+    double zipf;
+
+    Engine engine;
+    Workload w;
+
+    @Setup
+    public void setup() {
+        engine = Engine.load();
+        w = new Workload(size, zipf);
+    }
+
+    @Benchmark
+    public Object autocomplete() {
+        return engine.autocomplete(w.terms, w.weights);
+    }
+
+    @Benchmark
+    public Object trieInsert() {
+        Engine.PrefixSet t = engine.trie(false);
+        for (String term : w.terms) {
+            t.insert(term);
+        }
+        return t;
+    }
+
+    @Benchmark
+    public Object compressedTrieAcInsert() {
+        Engine.PrefixSet t = engine.trie(true);
+        for (int i = 0; i < w.terms.length; i++) {
+            t.acInsert(w.terms[i], w.weights[i]);
+        }
+        return t;
+    }
+}
@@ -0,0 +1,51 @@
+package bench;
+
+import java.io.InputStream;
+import java.io.PrintStream;
+
+/**
+ * What the benchmarks need from the project's classes. JMH refuses
+ * benchmarks in the default package, and code in a named package cannot
+ * refer to default package classes, so BenchEngine (default package)
+ * implements this interface and the benchmarks load it by name.
+ */
+public interface Engine {
+
+    /** Builds an Autocomplete over the given dictionary */
+    Completer autocomplete(String[] terms, double[] weights);
+
+    /** Returns an empty Trie, path-compressed if compressed is set */
+    PrefixSet trie(boolean compressed);
+
+    /** Runs AlphabetSort.main reading in and printing to out */
+    void alphabetSort(InputStream in, PrintStream out) throws Exception;
+
+    /** Queries of an Autocomplete */
+    interface Completer {
+        String topMatch(String prefix);
+
+        Iterable<String> topMatches(String prefix, int k);
+
+        int topMatches(String prefix, String[] out);
+
+        double weightOf(String term);
+    }
+
+    /** Operations of a Trie */
+    interface PrefixSet {
+        void insert(String s);
+
+        void acInsert(String s, double weight);
+
+        boolean find(String s, boolean isFullWord);
+    }
+
+    /** Loads the default package implementation */
+    static Engine load() {
+        try {
+            return (Engine) Class.forName("BenchEngine").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("BenchEngine is not on the classpath", e);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Autocomplete.topMatch and weightOf against dictionary size, weight skew
+ * and prefix length. Each call takes the next of a fixed ring of queries.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 3, jvmArgsAppend = {"-Xms4g", "-Xmx4g", "-XX:+AlwaysPreTouch"})
+public class QueryBenchmark {
+    static final int QUERIES = 4096;   // power of two, indexed by mask
+
+    @Param({"10000", "100000", "1000000"})
+    int size;
+
+    @Param({"0.7", "1.2"})
+    double zipf;
+
+    @Param({"1", "2", "4"})
+    int prefixLength;
+
+    Engine.Completer ac;
+    String[] prefixes;
+    String[] lookups;
+    int next;
+
+    @Setup
+    public void setup() {
+        Workload w = new Workload(size, zipf);
+        ac = Engine.load().autocomplete(w.terms, w.weights);
+        prefixes = w.prefixes(QUERIES, prefixLength, Workload.SEED + 1);
+        lookups = w.lookups(QUERIES, 0.9, Workload.SEED + 2);
+    }
+
+    @Benchmark
+    public String topMatch() {
+        return ac.topMatch(prefixes[next++ & (QUERIES - 1)]);
+    }
+
+    @Benchmark
+    public double weightOf() {
+        return ac.weightOf(lookups[next++ & (QUERIES - 1)]);
+    }
+}
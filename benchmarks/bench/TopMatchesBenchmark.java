@@ -0,0 +1,66 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Autocomplete.topMatches swept over k and prefix length, both through the
+ * lazy Iterable (drained completely) and into a reused caller buffer. Run
+ * with -prof gc to see allocation per call.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 3, jvmArgsAppend = {"-Xms4g", "-Xmx4g", "-XX:+AlwaysPreTouch"})
+public class TopMatchesBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    int size;
+
+    @Param({"0.7", "1.2"})
+    double zipf;
+
+    @Param({"1", "2", "4"})
+    int prefixLength;
+
+    @Param({"1", "10", "100"})
+    int k;
+
+    Engine.Completer ac;
+    String[] prefixes;
+    String[] out;
+    int next;
+
+    @Setup
+    public void setup() {
+        Workload w = new Workload(size, zipf);
+        ac = Engine.load().autocomplete(w.terms, w.weights);
+        prefixes = w.prefixes(QueryBenchmark.QUERIES, prefixLength, Workload.SEED + 1);
+        out = new String[k];
+    }
+
+    @Benchmark
+    public void iterable(Blackhole bh) {
+        for (String term : ac.topMatches(prefixes[next++ & (QueryBenchmark.QUERIES - 1)], k)) {
+            bh.consume(term);
+        }
+    }
+
+    @Benchmark
+    public int buffer() {
+        return ac.topMatches(prefixes[next++ & (QueryBenchmark.QUERIES - 1)], out);
+    }
+}
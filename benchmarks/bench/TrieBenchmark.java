@@ -0,0 +1,59 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Trie.find for whole words and prefixes, 90% hits, on a plain and a
+ * path-compressed Trie.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 3, jvmArgsAppend = {"-Xms4g", "-Xmx4g", "-XX:+AlwaysPreTouch"})
+public class TrieBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    int size;
+
+    @Param({"false", "true"})
+    boolean compressed;
+
+    Engine.PrefixSet trie;
+    String[] lookups;
+    String[] prefixes;
+    int next;
+
+    @Setup
+    public void setup() {
+        Workload w = new Workload(size, 1.0);
+        trie = Engine.load().trie(compressed);
+        for (int i = 0; i < w.terms.length; i++) {
+            trie.acInsert(w.terms[i], w.weights[i]);
+        }
+        lookups = w.lookups(QueryBenchmark.QUERIES, 0.9, Workload.SEED + 2);
+        prefixes = w.prefixes(QueryBenchmark.QUERIES, 3, Workload.SEED + 1);
+    }
+
+    @Benchmark
+    public boolean findWord() {
+        return trie.find(lookups[next++ & (QueryBenchmark.QUERIES - 1)], true);
+    }
+
+    @Benchmark
+    public boolean findPrefix() {
+        return trie.find(prefixes[next++ & (QueryBenchmark.QUERIES - 1)], false);
+    }
+}
@@ -0,0 +1,122 @@
+package bench;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Random;
+
+/**
+ * Synthetic dictionaries for the benchmarks. Terms are pronounceable strings
+ * of random syllables, weights follow a Zipf distribution over a shuffled
+ * rank order, and everything derives from fixed seeds, so every fork of every
+ * run sees identical data.
+ */
+public final class Workload {
+    public static final long SEED = 61;
+
+    private static final String[] SYLLABLES = {
+        "ka", "lo", "mi", "ne", "ru", "sa", "to", "vi", "ba", "de", "fo", "gu",
+        "ha", "ji", "po", "qu", "ze", "wa", "yo", "xi", "an", "el", "in", "or",
+        "st", "tr", "ch", "sh", "th", "ng", "ck", "y",
+    };
+
+    public final String[] terms;
+    public final double[] weights;
+
+    /**
+     * @param size - number of distinct terms
+     * @param zipf - Zipf exponent s: the term of rank r weighs 1e9 / r^s, so
+     *               0 gives equal weights and larger s skews harder
+     */
+    public Workload(int size, double zipf) {
+        Random rng = new Random(SEED);
+        HashSet<String> seen = new HashSet<>();
+        terms = new String[size];
+        int n = 0;
+        while (n < size) {
+            StringBuilder sb = new StringBuilder();
+            int syllables = 1 + rng.nextInt(6);
+            for (int i = 0; i < syllables; i++) {
+                sb.append(SYLLABLES[rng.nextInt(SYLLABLES.length)]);
+            }
+            String term = sb.toString();
+            if (seen.add(term)) {
+                terms[n++] = term;
+            }
+        }
+
+        // ranks 1..size in random order
+        int[] rank = new int[size];
+        for (int i = 0; i < size; i++) {
+            rank[i] = i + 1;
+        }
+        for (int i = size - 1; i > 0; i--) {
+            int j = rng.nextInt(i + 1);
+            int tmp = rank[i];
+            rank[i] = rank[j];
+            rank[j] = tmp;
+        }
+        weights = new double[size];
+        for (int i = 0; i < size; i++) {
+            weights[i] = 1e9 / Math.pow(rank[i], zipf);
+        }
+    }
+
+    /**
+     * Returns count query prefixes: the first prefixLength chars of terms
+     * drawn uniformly, or the whole term if it is shorter.
+     */
+    public String[] prefixes(int count, int prefixLength, long seed) {
+        Random rng = new Random(seed);
+        String[] retVal = new String[count];
+        for (int i = 0; i < count; i++) {
+            String term = terms[rng.nextInt(terms.length)];
+            retVal[i] = term.substring(0, Math.min(prefixLength, term.length()));
+        }
+        return retVal;
+    }
+
+    /**
+     * Returns count lookup keys, a hitRate share of them terms of the
+     * dictionary and the rest terms with a character appended.
+     */
+    public String[] lookups(int count, double hitRate, long seed) {
+        Random rng = new Random(seed);
+        String[] retVal = new String[count];
+        for (int i = 0; i < count; i++) {
+            String term = terms[rng.nextInt(terms.length)];
+            retVal[i] = rng.nextDouble() < hitRate ? term : term + "q";
+        }
+        return retVal;
+    }
+
+    /**
+     * Returns AlphabetSort input: a shuffled alphabet of every char used by
+     * the terms on the first line, then the terms one per line.
+     */
+    public byte[] alphabetSortInput(long seed) {
+        boolean[] used = new boolean[128];
+        for (String s : SYLLABLES) {
+            for (int i = 0; i < s.length(); i++) {
+                used[s.charAt(i)] = true;
+            }
+        }
+        StringBuilder alphabet = new StringBuilder();
+        for (char c = 0; c < used.length; c++) {
+            if (used[c]) {
+                alphabet.append(c);
+            }
+        }
+        Random rng = new Random(seed);
+        for (int i = alphabet.length() - 1; i > 0; i--) {
+            int j = rng.nextInt(i + 1);
+            char tmp = alphabet.charAt(i);
+            alphabet.setCharAt(i, alphabet.charAt(j));
+            alphabet.setCharAt(j, tmp);
+        }
+        StringBuilder sb = new StringBuilder(alphabet).append('\n');
+        for (String term : terms) {
+            sb.append(term).append('\n');
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}